@@ -0,0 +1,140 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.extension.XExtension;
+import org.deckfour.xes.extension.XExtensionManager;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.impl.XAttributeBooleanImpl;
+import org.deckfour.xes.model.impl.XAttributeContinuousImpl;
+import org.deckfour.xes.model.impl.XAttributeDiscreteImpl;
+import org.deckfour.xes.model.impl.XAttributeLiteralImpl;
+import org.deckfour.xes.model.impl.XAttributeTimestampImpl;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.text.ParseException;
+import java.util.Date;
+
+//Conversor compilado de un nuevo atributo (XESPluginField): el tipo de atributo y el tipo de dato
+//se resuelven una sola vez al inicio, de manera que por cada fila solo queda leer la columna y crear el XAttribute.
+
+public class XESPluginAttributeConverter {
+
+    public static final int DATO_BOOLEAN = 0;
+    public static final int DATO_STRING = 1;
+    public static final int DATO_INTEGER = 2;
+    public static final int DATO_DATE = 3;
+    public static final int DATO_FLOAT = 4;
+    public static final int DATO_ID = 5;
+
+    private final int columna;
+    private final String clave;
+    private final boolean deCaso;
+    private final int tipoDato;
+    private final ValueMetaInterface metaColumna;
+    private final XExtension extension;
+
+    private XESPluginAttributeConverter(int columna, String clave, boolean deCaso, int tipoDato, ValueMetaInterface metaColumna, XExtension extension) {
+        this.columna = columna;
+        this.clave = clave;
+        this.deCaso = deCaso;
+        this.tipoDato = tipoDato;
+        this.metaColumna = metaColumna;
+        this.extension = extension;
+    }
+
+    /**
+     * Compila la definicion de un nuevo atributo.
+     *
+     * @return el conversor, o null si el tipo de atributo o el tipo de dato no son validos (el atributo se ignora)
+     */
+    public static XESPluginAttributeConverter compilar(XESPluginField campo, int columna, ValueMetaInterface metaColumna) {
+        boolean deCaso;
+        if ("Activity".equalsIgnoreCase(campo.getTypename())) {
+            deCaso = false;
+        } else if ("Case".equalsIgnoreCase(campo.getTypename())) {
+            deCaso = true;
+        } else {
+            return null;
+        }
+
+        int tipoDato;
+        String dato = campo.getDatodname();
+        if ("boolean".equalsIgnoreCase(dato)) {
+            tipoDato = DATO_BOOLEAN;
+        } else if ("String".equalsIgnoreCase(dato)) {
+            tipoDato = DATO_STRING;
+        } else if ("Integer".equalsIgnoreCase(dato)) {
+            tipoDato = DATO_INTEGER;
+        } else if ("Date".equalsIgnoreCase(dato)) {
+            tipoDato = DATO_DATE;
+        } else if ("Float".equalsIgnoreCase(dato)) {
+            tipoDato = DATO_FLOAT;
+        } else if ("ID".equalsIgnoreCase(dato)) {
+            tipoDato = DATO_ID;
+        } else {
+            return null;
+        }
+
+        //las fechas de los atributos de actividad se declaran con la extension time
+        XExtension extension = null;
+        if (tipoDato == DATO_DATE && !deCaso) {
+            extension = XExtensionManager.instance().getByPrefix("time");
+        }
+        return new XESPluginAttributeConverter(columna, campo.getFieldName().intern(), deCaso, tipoDato, metaColumna, extension);
+    }
+
+    public int getColumna() {
+        return columna;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public boolean isDeCaso() {
+        return deCaso;
+    }
+
+    public int getTipoDato() {
+        return tipoDato;
+    }
+
+    /**
+     * Convierte el valor de la columna en el atributo correspondiente.
+     *
+     * @param fila         fila de entrada
+     * @param formatoFecha formato para interpretar las fechas que llegan como texto
+     * @return el atributo, o null si la celda esta vacia
+     */
+    public XAttribute convertir(Object[] fila, XESPluginTimestampParser formatoFecha) throws KettleValueException, ParseException {
+        Object valor = fila[columna];
+        if (valor == null || metaColumna.isNull(valor)) {
+            return null;
+        }
+        //el texto solo se extrae si la columna es de tipo String o si el atributo lo necesita
+        String texto = null;
+        if (metaColumna.isString()) {
+            texto = XESPluginValueReader.getString(metaColumna, valor);
+            if (XESPluginValueReader.esVacio(texto)) {
+                return null;
+            }
+        }
+        switch (tipoDato) {
+            case DATO_BOOLEAN:
+                return new XAttributeBooleanImpl(clave, XESPluginValueReader.getBoolean(metaColumna, valor));
+            case DATO_INTEGER:
+                return new XAttributeDiscreteImpl(clave, XESPluginValueReader.getInteger(metaColumna, valor));
+            case DATO_DATE:
+                Date fecha = XESPluginValueReader.getDate(metaColumna, valor);
+                if (fecha == null) {
+                    fecha = formatoFecha.parse(texto != null ? texto : XESPluginValueReader.getString(metaColumna, valor));
+                }
+                return new XAttributeTimestampImpl(clave, fecha, extension);
+            case DATO_FLOAT:
+                return new XAttributeContinuousImpl(clave, XESPluginValueReader.getNumber(metaColumna, valor));
+            default:
+                //String e ID se guardan como literales
+                return new XAttributeLiteralImpl(clave, texto != null ? texto : XESPluginValueReader.getString(metaColumna, valor));
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeMap;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+//Mapa de atributos compacto: dos arreglos paralelos (claves ordenadas y valores) en lugar de una tabla hash.
+//Un evento tiene normalmente entre 5 y 8 atributos, por lo que la busqueda binaria es tan rapida como el hash
+//y se evitan las entradas, la tabla y el crecimiento de HashMap. Las claves son casi siempre literales
+//(ya internadas), asi que la comparacion por referencia resuelve la mayoria de las busquedas.
+
+public class XESPluginAttributeMap extends AbstractMap<String, XAttribute> implements XAttributeMap {
+
+    private static final String[] SIN_CLAVES = new String[0];
+    private static final XAttribute[] SIN_VALORES = new XAttribute[0];
+
+    private String[] claves;
+    private XAttribute[] valores;
+    private int tamano;
+    private int modificaciones;
+
+    public XESPluginAttributeMap() {
+        this.claves = SIN_CLAVES;
+        this.valores = SIN_VALORES;
+    }
+
+    public XESPluginAttributeMap(int capacidad) {
+        this.claves = capacidad == 0 ? SIN_CLAVES : new String[capacidad];
+        this.valores = capacidad == 0 ? SIN_VALORES : new XAttribute[capacidad];
+    }
+
+    //posicion de la clave, o -(punto de insercion + 1) si no esta
+    private int Buscar(Object clave) {
+        for (int i = 0; i < this.tamano; i++) {
+            if (this.claves[i] == clave) {
+                return i;
+            }
+        }
+        if (!(clave instanceof String)) {
+            return -1;
+        }
+        int bajo = 0;
+        int alto = this.tamano - 1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            int cmp = this.claves[medio].compareTo((String) clave);
+            if (cmp < 0) {
+                bajo = medio + 1;
+            } else if (cmp > 0) {
+                alto = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -(bajo + 1);
+    }
+
+    @Override
+    public int size() {
+        return this.tamano;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.tamano == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object clave) {
+        return clave != null && Buscar(clave) >= 0;
+    }
+
+    @Override
+    public XAttribute get(Object clave) {
+        if (clave == null) {
+            return null;
+        }
+        int pos = Buscar(clave);
+        return pos >= 0 ? this.valores[pos] : null;
+    }
+
+    @Override
+    public XAttribute put(String clave, XAttribute valor) {
+        if (clave == null) {
+            throw new NullPointerException("Attribute map keys cannot be null");
+        }
+        int pos = Buscar(clave);
+        if (pos >= 0) {
+            XAttribute anterior = this.valores[pos];
+            this.valores[pos] = valor;
+            return anterior;
+        }
+        pos = -(pos + 1);
+        if (this.tamano == this.claves.length) {
+            int capacidad = this.tamano == 0 ? 4 : this.tamano + (this.tamano >> 1) + 1;
+            this.claves = Arrays.copyOf(this.claves, capacidad);
+            this.valores = Arrays.copyOf(this.valores, capacidad);
+        }
+        System.arraycopy(this.claves, pos, this.claves, pos + 1, this.tamano - pos);
+        System.arraycopy(this.valores, pos, this.valores, pos + 1, this.tamano - pos);
+        this.claves[pos] = clave;
+        this.valores[pos] = valor;
+        this.tamano++;
+        this.modificaciones++;
+        return null;
+    }
+
+    @Override
+    public XAttribute remove(Object clave) {
+        if (clave == null) {
+            return null;
+        }
+        int pos = Buscar(clave);
+        if (pos < 0) {
+            return null;
+        }
+        XAttribute anterior = this.valores[pos];
+        Eliminar(pos);
+        return anterior;
+    }
+
+    private void Eliminar(int pos) {
+        int mover = this.tamano - pos - 1;
+        System.arraycopy(this.claves, pos + 1, this.claves, pos, mover);
+        System.arraycopy(this.valores, pos + 1, this.valores, pos, mover);
+        this.tamano--;
+        this.claves[this.tamano] = null;
+        this.valores[this.tamano] = null;
+        this.modificaciones++;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.claves, 0, this.tamano, null);
+        Arrays.fill(this.valores, 0, this.tamano, null);
+        this.tamano = 0;
+        this.modificaciones++;
+    }
+
+    /**
+     * Ajusta los arreglos al numero de atributos, para los mapas que ya no van a crecer.
+     */
+    public void compactar() {
+        if (this.tamano < this.claves.length) {
+            this.claves = this.tamano == 0 ? SIN_CLAVES : Arrays.copyOf(this.claves, this.tamano);
+            this.valores = this.tamano == 0 ? SIN_VALORES : Arrays.copyOf(this.valores, this.tamano);
+        }
+    }
+
+    //Entrada del entrySet; setValue escribe en el mapa
+    private static final class Entrada extends SimpleEntry<String, XAttribute> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient XESPluginAttributeMap mapa;
+        private final int pos;
+
+        Entrada(XESPluginAttributeMap mapa, int pos) {
+            super(mapa.claves[pos], mapa.valores[pos]);
+            this.mapa = mapa;
+            this.pos = pos;
+        }
+
+        @Override
+        public XAttribute setValue(XAttribute valor) {
+            this.mapa.valores[this.pos] = valor;
+            return super.setValue(valor);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, XAttribute>> entrySet() {
+        return new AbstractSet<Entry<String, XAttribute>>() {
+            @Override
+            public Iterator<Entry<String, XAttribute>> iterator() {
+                return new Iterator<Entry<String, XAttribute>>() {
+                    private int siguiente = 0;
+                    private int ultimo = -1;
+                    private int esperadas = modificaciones;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.siguiente < tamano;
+                    }
+
+                    @Override
+                    public Entry<String, XAttribute> next() {
+                        if (this.esperadas != modificaciones) {
+                            throw new ConcurrentModificationException();
+                        }
+                        if (this.siguiente >= tamano) {
+                            throw new NoSuchElementException();
+                        }
+                        this.ultimo = this.siguiente++;
+                        return new Entrada(XESPluginAttributeMap.this, this.ultimo);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (this.ultimo < 0) {
+                            throw new IllegalStateException();
+                        }
+                        if (this.esperadas != modificaciones) {
+                            throw new ConcurrentModificationException();
+                        }
+                        Eliminar(this.ultimo);
+                        this.siguiente = this.ultimo;
+                        this.ultimo = -1;
+                        this.esperadas = modificaciones;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return tamano;
+            }
+        };
+    }
+
+    /**
+     * Copia profunda, igual que XAttributeMapImpl: cada atributo se clona.
+     */
+    @Override
+    public Object clone() {
+        XESPluginAttributeMap copia = new XESPluginAttributeMap(this.tamano);
+        System.arraycopy(this.claves, 0, copia.claves, 0, this.tamano);
+        for (int i = 0; i < this.tamano; i++) {
+            copia.valores[i] = (XAttribute) this.valores[i].clone();
+        }
+        copia.tamano = this.tamano;
+        return copia;
+    }
+}
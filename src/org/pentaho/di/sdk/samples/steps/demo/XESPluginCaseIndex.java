@@ -0,0 +1,56 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Indice de casos: relaciona cada instancia de proceso con su traza en tiempo constante.
+//Las trazas se guardan en una lista respaldada por arreglo, en el orden en que aparecio cada caso,
+//de manera que la posicion devuelta por el indice sirve como identificador entero de la traza.
+
+public class XESPluginCaseIndex<T> {
+
+    private final Map<String, Integer> posiciones;
+    private final ArrayList<T> trazas;
+
+    public XESPluginCaseIndex() {
+        this.posiciones = new HashMap<>();
+        this.trazas = new ArrayList<>();
+    }
+
+    /**
+     * @return la posicion de la traza del caso, o -1 si el caso no se ha registrado todavia.
+     */
+    public int buscar(String caso) {
+        Integer pos = this.posiciones.get(caso);
+        return pos == null ? -1 : pos;
+    }
+
+    /**
+     * Registra un caso nuevo al final de la lista de trazas.
+     *
+     * @return la posicion asignada a la traza
+     */
+    public int registrar(String caso, T traza) {
+        int pos = this.trazas.size();
+        this.trazas.add(traza);
+        this.posiciones.put(caso, pos);
+        return pos;
+    }
+
+    public T obtener(int pos) {
+        return this.trazas.get(pos);
+    }
+
+    public int size() {
+        return this.trazas.size();
+    }
+
+    /**
+     * @return las trazas en el orden en que aparecieron sus casos
+     */
+    public List<T> getTrazas() {
+        return this.trazas;
+    }
+}
@@ -0,0 +1,441 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeBoolean;
+import org.deckfour.xes.model.XAttributeContinuous;
+import org.deckfour.xes.model.XAttributeDiscrete;
+import org.deckfour.xes.model.XAttributeID;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XAttributeTimestamp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Indice de casos persistente entre ejecuciones: una tabla hash de direccionamiento abierto dentro de un fichero
+//proyectado en memoria, asi que buscar un caso cuesta lo mismo con mil casos que con diez millones y no hace falta
+//cargar nada en el heap ni leer los XES anteriores. Por cada caso guarda el segmento donde esta su traza, la
+//cantidad de eventos, la ultima marca de tiempo y el costo total, con lo que una fila que llega se puede
+//clasificar como de un caso nuevo, de un caso existente o de un evento que quizas ya se exporto. Esto ultimo
+//solo se puede decidir comparando con la traza anterior del caso (ver huella), que igual se relee al anexar.
+//
+//Formato: cabecera (MAGICO, VERSION, capacidad, cantidad, fin de las claves); las ranuras, de tamaño fijo
+//(firma, longitud y posicion de la clave, segmento, eventos, ultima marca y costo); y al final las claves
+//en UTF-8. Las ranuras y las claves se proyectan por tramos,
+//igual que el almacen de eventos, y una clave nunca queda partida entre dos tramos. Al pasar del 60% de
+//ocupacion la tabla se reconstruye con el doble de ranuras.
+
+public class XESPluginCaseStore implements Closeable {
+
+    //Clases de fila
+    public static final int FILA_CASO_NUEVO = 0;
+    public static final int FILA_CASO_EXISTENTE = 1;
+    public static final int FILA_POSIBLE_DUPLICADA = 2;
+
+    private static final int MAGICO = 0x58455348; //"XESH"
+    private static final int VERSION = 2;
+    private static final int CABECERA = 32;
+    private static final int RANURA = 40;
+    private static final int RANURAS_POR_TRAMO = 1 << 20;
+    private static final int TAMANO_TRAMO_CLAVES = 1 << 24;
+    private static final int CAPACIDAD_INICIAL = 1 << 12;
+    private static final long SIN_MARCA = Long.MIN_VALUE;
+
+    //posiciones dentro de una ranura
+    private static final int R_FIRMA = 0;
+    private static final int R_LONGITUD = 4;
+    private static final int R_CLAVE = 8;
+    private static final int R_SEGMENTO = 16;
+    private static final int R_EVENTOS = 20;
+    private static final int R_MARCA = 24;
+    private static final int R_COSTO = 32;
+
+    private final File archivo;
+    private final boolean escritura;
+    private RandomAccessFile acceso;
+    private FileChannel canal;
+    private int capacidad;
+    private int cantidad;
+    private long inicioClaves;
+    private long finClaves;
+    private final List<MappedByteBuffer> ranuras;
+    private final List<MappedByteBuffer> claves;
+
+    /**
+     * Abre el indice; para escribir lo crea vacio si no existe.
+     *
+     * @param escritura false para solo buscar (el fichero debe existir)
+     */
+    public XESPluginCaseStore(File archivo, boolean escritura) throws IOException {
+        this(archivo, escritura, CAPACIDAD_INICIAL);
+    }
+
+    private XESPluginCaseStore(File archivo, boolean escritura, int capacidadInicial) throws IOException {
+        this.archivo = archivo;
+        this.escritura = escritura;
+        this.ranuras = new ArrayList<>();
+        this.claves = new ArrayList<>();
+        boolean nuevo = !archivo.exists() || archivo.length() == 0;
+        if (nuevo && !escritura) {
+            throw new IOException(archivo + " does not exist");
+        }
+        this.acceso = new RandomAccessFile(archivo, escritura ? "rw" : "r");
+        this.canal = this.acceso.getChannel();
+        if (nuevo) {
+            Inicializar(capacidadInicial);
+        } else {
+            ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+            this.canal.read(cabecera, 0);
+            cabecera.flip();
+            if (cabecera.remaining() < CABECERA || cabecera.getInt() != MAGICO || cabecera.getInt() != VERSION) {
+                close();
+                throw new IOException(archivo + " is not a case index");
+            }
+            this.capacidad = cabecera.getInt();
+            this.cantidad = cabecera.getInt();
+            this.finClaves = cabecera.getLong();
+            this.inicioClaves = CABECERA + (long) this.capacidad * RANURA;
+        }
+        Proyectar();
+    }
+
+    public int getCasos() {
+        return cantidad;
+    }
+
+    /**
+     * @return la ranura del caso, o -1 si el caso no esta en el indice
+     */
+    public int buscar(String caso) {
+        byte[] clave = caso.getBytes(StandardCharsets.UTF_8);
+        long hash = Hash(clave);
+        int ranura = Sondear(clave, hash);
+        return Ranura(ranura).getInt(Posicion(ranura) + R_FIRMA) == 0 ? -1 : ranura;
+    }
+
+    /**
+     * @return el segmento donde esta la traza del caso, desde 1
+     */
+    public int getSegmento(int ranura) {
+        return Ranura(ranura).getInt(Posicion(ranura) + R_SEGMENTO);
+    }
+
+    public int getEventos(int ranura) {
+        return Ranura(ranura).getInt(Posicion(ranura) + R_EVENTOS);
+    }
+
+    /**
+     * @return la ultima marca de tiempo de la traza en milisegundos, o Long.MIN_VALUE si no tiene
+     */
+    public long getUltimaMarca(int ranura) {
+        return Ranura(ranura).getLong(Posicion(ranura) + R_MARCA);
+    }
+
+    /**
+     * @return el costo total de la traza, o NaN si no tiene
+     */
+    public double getCostoTotal(int ranura) {
+        return Ranura(ranura).getDouble(Posicion(ranura) + R_COSTO);
+    }
+
+    /**
+     * Clasifica una fila. Un evento de un caso existente que no es posterior a la ultima marca exportada puede
+     * ser un evento ya exportado o uno que llego tarde; con el indice no se puede saber cual, asi que la fila se
+     * conserva y se compara despues con los eventos de la traza anterior.
+     *
+     * @param marca marca de tiempo del evento en milisegundos, o Long.MIN_VALUE si no tiene
+     */
+    public int clasificar(String caso, long marca) {
+        int ranura = buscar(caso);
+        if (ranura == -1) {
+            return FILA_CASO_NUEVO;
+        }
+        long ultima = getUltimaMarca(ranura);
+        if (marca == SIN_MARCA || ultima == SIN_MARCA || marca > ultima) {
+            return FILA_CASO_EXISTENTE;
+        }
+        return FILA_POSIBLE_DUPLICADA;
+    }
+
+    /**
+     * Agrega el caso o reemplaza sus datos.
+     *
+     * @param costo costo total, o NaN si la traza no tiene
+     */
+    public void poner(String caso, int segmento, int eventos, long ultimaMarca, double costo) throws IOException {
+        if (!this.escritura) {
+            throw new IOException(this.archivo + " is open for reading only");
+        }
+        byte[] clave = caso.getBytes(StandardCharsets.UTF_8);
+        long hash = Hash(clave);
+        int ranura = Sondear(clave, hash);
+        if (Ranura(ranura).getInt(Posicion(ranura) + R_FIRMA) == 0) {
+            if (this.cantidad + 1 > this.capacidad / 10 * 6) {
+                Crecer();
+                ranura = Sondear(clave, hash);
+            }
+            long posicionClave = AgregarClave(clave);
+            MappedByteBuffer tramo = Ranura(ranura);
+            int posicion = Posicion(ranura);
+            tramo.putInt(posicion + R_FIRMA, Firma(hash));
+            tramo.putInt(posicion + R_LONGITUD, clave.length);
+            tramo.putLong(posicion + R_CLAVE, posicionClave);
+            this.cantidad++;
+        }
+        MappedByteBuffer tramo = Ranura(ranura);
+        int posicion = Posicion(ranura);
+        tramo.putInt(posicion + R_SEGMENTO, segmento);
+        tramo.putInt(posicion + R_EVENTOS, eventos);
+        tramo.putLong(posicion + R_MARCA, ultimaMarca);
+        tramo.putDouble(posicion + R_COSTO, costo);
+    }
+
+    /**
+     * Huella de un evento: combina todos sus atributos (clave, tipo y valor) sin depender del orden, salvo los
+     * identificadores XID, que se generan en cada ejecucion. Un evento leido de un XES escrito por el paso tiene
+     * la misma huella que el evento armado con su fila, asi que sirve para reconocer un evento ya exportado.
+     */
+    public static long huella(XAttributeMap atributos) {
+        long huella = 0;
+        for (XAttribute atributo : atributos.values()) {
+            if (atributo instanceof XAttributeID) {
+                continue;
+            }
+            String valor;
+            char tipo;
+            if (atributo instanceof XAttributeTimestamp) {
+                valor = Long.toString(((XAttributeTimestamp) atributo).getValueMillis());
+                tipo = 'd';
+            } else if (atributo instanceof XAttributeContinuous) {
+                valor = Double.toString(((XAttributeContinuous) atributo).getValue());
+                tipo = 'f';
+            } else {
+                valor = atributo.toString();
+                tipo = atributo instanceof XAttributeDiscrete ? 'i' : atributo instanceof XAttributeBoolean ? 'b' : 's';
+            }
+            //la suma no depende del orden de los atributos
+            huella += Mezclar(Hash((atributo.getKey() + '\u0000' + tipo + valor).getBytes(StandardCharsets.UTF_8)));
+        }
+        return huella;
+    }
+
+    /**
+     * Escribe la cabecera y baja a disco lo proyectado; el indice queda cerrado.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (this.escritura && this.canal != null) {
+                EscribirCabecera();
+                for (MappedByteBuffer tramo : this.ranuras) {
+                    tramo.force();
+                }
+                for (MappedByteBuffer tramo : this.claves) {
+                    tramo.force();
+                }
+            }
+        } finally {
+            this.ranuras.clear();
+            this.claves.clear();
+            if (this.escritura && this.acceso != null) {
+                try {
+                    //el ultimo tramo de claves se proyecto entero: se quita lo que sobra al final
+                    this.acceso.setLength(this.finClaves);
+                } catch (IOException e) {
+                    //en Windows no se puede recortar un fichero proyectado; el relleno no molesta al leer
+                }
+            }
+            if (this.canal != null) {
+                this.canal.close();
+            }
+            if (this.acceso != null) {
+                this.acceso.close();
+            }
+            this.canal = null;
+            this.acceso = null;
+        }
+    }
+
+    //Ranura del caso, o la primera ranura libre donde iria (sondeo lineal)
+    private int Sondear(byte[] clave, long hash) {
+        int mascara = this.capacidad - 1;
+        int firma = Firma(hash);
+        int ranura = (int) hash & mascara;
+        while (true) {
+            MappedByteBuffer tramo = Ranura(ranura);
+            int posicion = Posicion(ranura);
+            int firmaRanura = tramo.getInt(posicion + R_FIRMA);
+            if (firmaRanura == 0) {
+                return ranura;
+            }
+            if (firmaRanura == firma && tramo.getInt(posicion + R_LONGITUD) == clave.length
+                    && ClaveIgual(tramo.getLong(posicion + R_CLAVE), clave)) {
+                return ranura;
+            }
+            ranura = (ranura + 1) & mascara;
+        }
+    }
+
+    private boolean ClaveIgual(long posicionClave, byte[] clave) {
+        long relativa = posicionClave - this.inicioClaves;
+        MappedByteBuffer tramo = this.claves.get((int) (relativa / TAMANO_TRAMO_CLAVES));
+        int posicion = (int) (relativa % TAMANO_TRAMO_CLAVES);
+        for (int i = 0; i < clave.length; i++) {
+            if (tramo.get(posicion + i) != clave[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long AgregarClave(byte[] clave) throws IOException {
+        if (clave.length > TAMANO_TRAMO_CLAVES) {
+            throw new IOException("Case id of " + clave.length + " bytes is too long for the case index");
+        }
+        long relativa = this.finClaves - this.inicioClaves;
+        long enTramo = relativa % TAMANO_TRAMO_CLAVES;
+        if (enTramo + clave.length > TAMANO_TRAMO_CLAVES) {
+            //la clave no cabe en lo que queda del tramo: empieza en el siguiente
+            relativa += TAMANO_TRAMO_CLAVES - enTramo;
+        }
+        int indice = (int) (relativa / TAMANO_TRAMO_CLAVES);
+        while (this.claves.size() <= indice) {
+            this.claves.add(this.canal.map(FileChannel.MapMode.READ_WRITE, this.inicioClaves + (long) this.claves.size() * TAMANO_TRAMO_CLAVES,
+                    TAMANO_TRAMO_CLAVES));
+        }
+        MappedByteBuffer tramo = this.claves.get(indice);
+        int posicion = (int) (relativa % TAMANO_TRAMO_CLAVES);
+        for (int i = 0; i < clave.length; i++) {
+            tramo.put(posicion + i, clave[i]);
+        }
+        this.finClaves = this.inicioClaves + relativa + clave.length;
+        return this.inicioClaves + relativa;
+    }
+
+    //Reconstruye la tabla con el doble de ranuras en un fichero nuevo que despues reemplaza al actual
+    private void Crecer() throws IOException {
+        File temporal = new File(this.archivo.getPath() + ".tmp");
+        temporal.delete();
+        XESPluginCaseStore mayor = new XESPluginCaseStore(temporal, true, this.capacidad * 2);
+        try {
+            for (int ranura = 0; ranura < this.capacidad; ranura++) {
+                MappedByteBuffer tramo = Ranura(ranura);
+                int posicion = Posicion(ranura);
+                if (tramo.getInt(posicion + R_FIRMA) == 0) {
+                    continue;
+                }
+                byte[] clave = new byte[tramo.getInt(posicion + R_LONGITUD)];
+                long relativa = tramo.getLong(posicion + R_CLAVE) - this.inicioClaves;
+                ByteBuffer tramoClave = this.claves.get((int) (relativa / TAMANO_TRAMO_CLAVES)).duplicate();
+                tramoClave.position((int) (relativa % TAMANO_TRAMO_CLAVES));
+                tramoClave.get(clave);
+                long hash = Hash(clave);
+                int destino = mayor.Sondear(clave, hash);
+                MappedByteBuffer tramoDestino = mayor.Ranura(destino);
+                int posicionDestino = Posicion(destino);
+                //los datos del caso se copian tal cual y la clave va al final de las claves del indice nuevo
+                for (int b = 0; b < RANURA; b += 8) {
+                    tramoDestino.putLong(posicionDestino + b, tramo.getLong(posicion + b));
+                }
+                tramoDestino.putLong(posicionDestino + R_CLAVE, mayor.AgregarClave(clave));
+                mayor.cantidad++;
+            }
+        } finally {
+            mayor.close();
+        }
+        this.ranuras.clear();
+        this.claves.clear();
+        this.canal.close();
+        this.acceso.close();
+        if (!temporal.renameTo(this.archivo)) {
+            throw new IOException("Unable to replace " + this.archivo);
+        }
+        this.acceso = new RandomAccessFile(this.archivo, "rw");
+        this.canal = this.acceso.getChannel();
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+        this.canal.read(cabecera, 0);
+        cabecera.flip();
+        cabecera.getInt();
+        cabecera.getInt();
+        this.capacidad = cabecera.getInt();
+        this.cantidad = cabecera.getInt();
+        this.finClaves = cabecera.getLong();
+        this.inicioClaves = CABECERA + (long) this.capacidad * RANURA;
+        Proyectar();
+    }
+
+    private void Inicializar(int capacidad) throws IOException {
+        this.capacidad = capacidad;
+        this.cantidad = 0;
+        this.inicioClaves = CABECERA + (long) capacidad * RANURA;
+        this.finClaves = this.inicioClaves;
+        //las ranuras nuevas quedan en cero: libres
+        this.acceso.setLength(this.inicioClaves);
+        EscribirCabecera();
+    }
+
+    private void EscribirCabecera() throws IOException {
+        ByteBuffer cabecera = ByteBuffer.allocate(CABECERA);
+        cabecera.putInt(MAGICO);
+        cabecera.putInt(VERSION);
+        cabecera.putInt(this.capacidad);
+        cabecera.putInt(this.cantidad);
+        cabecera.putLong(this.finClaves);
+        cabecera.flip();
+        this.canal.write(cabecera, 0);
+    }
+
+    //Proyecta las ranuras y las claves ya escritas
+    private void Proyectar() throws IOException {
+        FileChannel.MapMode modo = this.escritura ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        for (long inicio = 0; inicio < this.capacidad; inicio += RANURAS_POR_TRAMO) {
+            long ranurasTramo = Math.min(RANURAS_POR_TRAMO, this.capacidad - inicio);
+            this.ranuras.add(this.canal.map(modo, CABECERA + inicio * RANURA, ranurasTramo * RANURA));
+        }
+        long bytesClaves = this.finClaves - this.inicioClaves;
+        for (long inicio = 0; inicio < bytesClaves; inicio += TAMANO_TRAMO_CLAVES) {
+            //para leer basta con lo escrito; para escribir el tramo se proyecta entero
+            long tamano = this.escritura ? TAMANO_TRAMO_CLAVES : Math.min(TAMANO_TRAMO_CLAVES, bytesClaves - inicio);
+            this.claves.add(this.canal.map(modo, this.inicioClaves + inicio, tamano));
+        }
+    }
+
+    private MappedByteBuffer Ranura(int ranura) {
+        return this.ranuras.get(ranura / RANURAS_POR_TRAMO);
+    }
+
+    private static int Posicion(int ranura) {
+        return (ranura % RANURAS_POR_TRAMO) * RANURA;
+    }
+
+    //FNV-1a de 64 bits
+    private static long Hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return Mezclar(hash);
+    }
+
+    //los bits altos, que no eligen la ranura, sirven para descartar claves sin compararlas; nunca es cero
+    private static int Firma(long hash) {
+        return (int) (hash >>> 32) | 1;
+    }
+
+    private static long Mezclar(long valor) {
+        valor ^= valor >>> 33;
+        valor *= 0xff51afd7ed558ccdL;
+        valor ^= valor >>> 33;
+        valor *= 0xc4ceb9fe1a85ec53L;
+        valor ^= valor >>> 33;
+        return valor;
+    }
+}
@@ -0,0 +1,707 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.classification.XEventAttributeClassifier;
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.extension.XExtension;
+import org.deckfour.xes.extension.XExtensionManager;
+import org.deckfour.xes.id.XID;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeBoolean;
+import org.deckfour.xes.model.XAttributeContinuous;
+import org.deckfour.xes.model.XAttributeDiscrete;
+import org.deckfour.xes.model.XAttributeID;
+import org.deckfour.xes.model.XAttributeLiteral;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XAttributeTimestamp;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.impl.XAttributeBooleanImpl;
+import org.deckfour.xes.model.impl.XAttributeContinuousImpl;
+import org.deckfour.xes.model.impl.XAttributeDiscreteImpl;
+import org.deckfour.xes.model.impl.XAttributeIDImpl;
+import org.deckfour.xes.model.impl.XAttributeLiteralImpl;
+import org.deckfour.xes.model.impl.XAttributeTimestampImpl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+//Log de eventos en formato binario por columnas (out.xesc), para cargarlo mucho mas rapido que el XML.
+//La cabecera (extensiones, globales, clasificadores y atributos del log) va al inicio; despues las trazas en
+//bloques comprimidos de unos EVENTOS_POR_BLOQUE eventos. Dentro de un bloque cada atributo frecuente es una
+//columna: actividad, ciclo de vida, recurso, rol, grupo y moneda como codigos de un diccionario compartido por
+//todo el fichero, la marca de tiempo como diferencia en milisegundos con la anterior, y la cantidad de eventos
+//de cada traza, que da donde empieza cada caso en las columnas. Los demas atributos de los eventos (o uno de
+//los anteriores con otra extension) van en la columna del resto: cada uno como el codigo de su forma (clave del
+//mapa, clave, extension y tipo, que se guardan una sola vez por fichero) seguido de su valor. Los atributos de
+//las trazas y los anidados van con XESPluginEventCodec. leer() reconstruye el mismo log, asi que el XES que se
+//escribe a partir de el es identico.
+//
+//Formato: MAGICO, VERSION, la cabecera con DataOutput y los bloques como (tamaño comprimido, tamaño original,
+//bytes deflate); un tamaño 0 marca el final. Un bloque sin comprimir trae los valores nuevos del diccionario,
+//las formas nuevas, la cantidad de trazas y de eventos, y cada columna precedida de su longitud. Los enteros
+//son varint.
+
+public class XESPluginColumnarLog implements Closeable {
+
+    public static final String EXTENSION = ".xesc";
+
+    //eventos por bloque: columnas largas comprimen mejor, pero todo el bloque se retiene hasta escribirlo
+    public static final int EVENTOS_POR_BLOQUE = 65536;
+
+    private static final int MAGICO = 0x58455343; //"XESC"
+    private static final int VERSION = 1;
+
+    //atributos literales que van en columnas de diccionario, con el prefijo de su extension
+    private static final String[] CLAVES_DICCIONARIO = {"concept:name", "lifecycle:transition", "org:resource", "org:role", "org:group", "cost:currency"};
+    private static final String[] PREFIJOS_DICCIONARIO = {"concept", "lifecycle", "org", "org", "org", "cost"};
+    private static final String CLAVE_MARCA = "time:timestamp";
+    //clave con la que el paso guarda el concept:name de la traza
+    private static final String CLAVE_CASO = "conceptnametrace";
+
+    //tipos de valor de la columna del resto
+    private static final int TIPO_LITERAL = 0;
+    private static final int TIPO_BOOLEAN = 1;
+    private static final int TIPO_CONTINUO = 2;
+    private static final int TIPO_DISCRETO = 3;
+    private static final int TIPO_FECHA = 4;
+    private static final int TIPO_ID = 5;
+
+    //Forma de un atributo de la columna del resto: todo lo que no es el valor
+    private static class Forma {
+        final int codigo;
+        final String claveMapa;
+        final String clave;
+        final String prefijo; //"" sin extension
+        final int tipo;
+        XExtension extension; //al leer
+
+        Forma(int codigo, String claveMapa, String clave, String prefijo, int tipo) {
+            this.codigo = codigo;
+            this.claveMapa = claveMapa;
+            this.clave = clave;
+            this.prefijo = prefijo;
+            this.tipo = tipo;
+        }
+    }
+
+    //Columna en formacion
+    private static class Columna extends ByteArrayOutputStream {
+        final DataOutputStream datos = new DataOutputStream(this);
+
+        Columna(int capacidad) {
+            super(capacidad);
+        }
+
+        void varint(long valor) {
+            while ((valor & ~0x7FL) != 0) {
+                write((int) (valor & 0x7F) | 0x80);
+                valor >>>= 7;
+            }
+            write((int) valor);
+        }
+
+        //texto con su longitud + 1; 0 es null
+        void texto(String texto) {
+            if (texto == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    //Columna de un bloque ya descomprimido
+    private static class Lector extends ByteArrayInputStream {
+        final DataInputStream datos = new DataInputStream(this);
+
+        Lector(byte[] bloque, int desde, int longitud) {
+            super(bloque, desde, longitud);
+        }
+
+        long varint() throws IOException {
+            long valor = 0;
+            int desplazamiento = 0;
+            byte b;
+            do {
+                if (this.pos >= this.count) {
+                    throw new EOFException("Truncated columnar block");
+                }
+                b = this.buf[this.pos++];
+                valor |= (long) (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while (b < 0);
+            return valor;
+        }
+
+        String texto() throws IOException {
+            int longitud = (int) varint() - 1;
+            if (longitud < 0) {
+                return null;
+            }
+            if (longitud > this.count - this.pos) {
+                throw new EOFException("Truncated columnar block");
+            }
+            String texto = new String(this.buf, this.pos, longitud, StandardCharsets.UTF_8);
+            this.pos += longitud;
+            return texto;
+        }
+
+        Lector columna() throws IOException {
+            int longitud = (int) varint();
+            if (longitud > this.count - this.pos) {
+                throw new EOFException("Truncated columnar block");
+            }
+            Lector columna = new Lector(this.buf, this.pos, longitud);
+            this.pos += longitud;
+            return columna;
+        }
+    }
+
+    //--- escritura ---
+
+    private final File archivo;
+    private final FileOutputStream fichero;
+    private final DataOutputStream salida;
+    private final Deflater compresor;
+    private final Map<String, Integer> codigos; //valor -> codigo en el diccionario
+    private final List<String> nuevos; //valores agregados al diccionario desde el ultimo bloque
+    private final Columna bloque;
+    private final Columna casos;
+    private final Columna atributosTraza;
+    private final Columna eventosTraza;
+    private final Columna[] diccionario;
+    private final Columna marcas;
+    private final Columna resto;
+    private final List<Map.Entry<String, XAttribute>> restoEvento;
+    private final Map<String, List<Forma>> formas; //clave del mapa -> formas con esa clave
+    private final List<Forma> formasNuevas; //formas agregadas desde el ultimo bloque
+    private int cantidadFormas;
+    private final int[] codigosEvento;
+    private byte[] comprimido;
+    private long marcaAnterior;
+    private int trazasBloque;
+    private int eventosBloque;
+    private int trazasEscritas;
+
+    /**
+     * Escribe la cabecera del log; el fichero se sobrescribe si existe.
+     */
+    public XESPluginColumnarLog(File archivo, XLog cabecera) throws IOException {
+        this.archivo = archivo;
+        this.fichero = new FileOutputStream(archivo);
+        this.salida = new DataOutputStream(new BufferedOutputStream(this.fichero, 1 << 16));
+        this.compresor = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.codigos = new HashMap<>();
+        this.nuevos = new ArrayList<>();
+        this.bloque = new Columna(1 << 20);
+        this.casos = new Columna(1 << 16);
+        this.atributosTraza = new Columna(1 << 16);
+        this.eventosTraza = new Columna(1 << 12);
+        this.diccionario = new Columna[CLAVES_DICCIONARIO.length];
+        for (int c = 0; c < this.diccionario.length; c++) {
+            this.diccionario[c] = new Columna(EVENTOS_POR_BLOQUE);
+        }
+        this.marcas = new Columna(EVENTOS_POR_BLOQUE * 2);
+        this.resto = new Columna(EVENTOS_POR_BLOQUE * 2);
+        this.restoEvento = new ArrayList<>();
+        this.formas = new HashMap<>();
+        this.formasNuevas = new ArrayList<>();
+        this.codigosEvento = new int[CLAVES_DICCIONARIO.length];
+        this.comprimido = new byte[1 << 16];
+
+        this.salida.writeInt(MAGICO);
+        this.salida.writeInt(VERSION);
+        this.salida.writeInt(cabecera.getExtensions().size());
+        for (XExtension extension : cabecera.getExtensions()) {
+            this.salida.writeUTF(extension.getName());
+            this.salida.writeUTF(extension.getPrefix());
+            this.salida.writeUTF(extension.getUri().toString());
+        }
+        EscribirGlobales(cabecera.getGlobalTraceAttributes());
+        EscribirGlobales(cabecera.getGlobalEventAttributes());
+        List<XEventAttributeClassifier> clasificadores = new ArrayList<>();
+        for (XEventClassifier clasificador : cabecera.getClassifiers()) {
+            if (clasificador instanceof XEventAttributeClassifier) {
+                clasificadores.add((XEventAttributeClassifier) clasificador);
+            }
+        }
+        this.salida.writeInt(clasificadores.size());
+        for (XEventAttributeClassifier clasificador : clasificadores) {
+            this.salida.writeUTF(clasificador.name());
+            String[] claves = clasificador.getDefiningAttributeKeys();
+            this.salida.writeInt(claves.length);
+            for (String clave : claves) {
+                this.salida.writeUTF(clave);
+            }
+        }
+        XESPluginEventCodec.escribirAtributos(this.salida, cabecera.getAttributes());
+    }
+
+    /**
+     * Agrega la traza, con sus atributos ya completos y sus eventos ordenados, al bloque en formacion.
+     */
+    public void escribirTraza(XESPluginTrace traza) throws IOException {
+        XAttributeMap atributos = traza.getAttributes();
+        //el concept:name que pone el paso va en la columna de casos, los demas atributos con el codec
+        XAttribute caso = atributos.get(CLAVE_CASO);
+        boolean casoEnColumna = caso instanceof XAttributeLiteral && "concept:name".equals(caso.getKey())
+                && caso.getExtension() == null && !caso.hasAttributes();
+        this.casos.texto(casoEnColumna ? ((XAttributeLiteral) caso).getValue() : null);
+        this.atributosTraza.datos.writeShort(casoEnColumna ? atributos.size() - 1 : atributos.size());
+        for (Map.Entry<String, XAttribute> entrada : atributos.entrySet()) {
+            if (!casoEnColumna || !CLAVE_CASO.equals(entrada.getKey())) {
+                XESPluginEventCodec.escribirAtributo(this.atributosTraza.datos, entrada.getKey(), entrada.getValue());
+            }
+        }
+        this.eventosTraza.varint(traza.size());
+        for (XEvent evento : traza) {
+            EscribirEvento(evento);
+        }
+        this.trazasBloque++;
+        this.eventosBloque += traza.size();
+        this.trazasEscritas++;
+        if (this.eventosBloque >= EVENTOS_POR_BLOQUE) {
+            EscribirBloque();
+        }
+    }
+
+    public int getTrazasEscritas() {
+        return trazasEscritas;
+    }
+
+    /**
+     * Escribe el ultimo bloque y el final del fichero.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            EscribirBloque();
+            this.salida.writeInt(0);
+        } finally {
+            this.compresor.end();
+            this.salida.close();
+        }
+    }
+
+    /**
+     * Descarta el fichero sin escribir el ultimo bloque ni el final, para cuando la escritura no termino.
+     */
+    public void abortar() throws IOException {
+        this.compresor.end();
+        this.fichero.close();
+        if (this.archivo.exists() && !this.archivo.delete()) {
+            throw new IOException("Unable to delete " + this.archivo);
+        }
+    }
+
+    private void EscribirEvento(XEvent evento) throws IOException {
+        Arrays.fill(this.codigosEvento, 0);
+        long marca = 0;
+        boolean conMarca = false;
+        this.restoEvento.clear();
+        for (Map.Entry<String, XAttribute> entrada : evento.getAttributes().entrySet()) {
+            String clave = entrada.getKey();
+            XAttribute atributo = entrada.getValue();
+            int c = ColumnaDiccionario(clave);
+            if (c >= 0 && atributo instanceof XAttributeLiteral && EnColumna(clave, atributo, PREFIJOS_DICCIONARIO[c])) {
+                this.codigosEvento[c] = Codigo(((XAttributeLiteral) atributo).getValue()) + 1;
+            } else if (CLAVE_MARCA.equals(clave) && atributo instanceof XAttributeTimestamp && EnColumna(clave, atributo, "time")) {
+                marca = ((XAttributeTimestamp) atributo).getValueMillis();
+                conMarca = true;
+            } else {
+                this.restoEvento.add(entrada);
+            }
+        }
+        for (int c = 0; c < this.diccionario.length; c++) {
+            this.diccionario[c].varint(this.codigosEvento[c]);
+        }
+        if (conMarca) {
+            //diferencia con la marca anterior en zigzag, + 1 para reservar el 0 a los eventos sin marca
+            this.marcas.varint(ZigZag(marca - this.marcaAnterior) + 1);
+            this.marcaAnterior = marca;
+        } else {
+            this.marcas.varint(0);
+        }
+        this.resto.varint(this.restoEvento.size());
+        for (Map.Entry<String, XAttribute> entrada : this.restoEvento) {
+            EscribirResto(entrada.getKey(), entrada.getValue());
+        }
+    }
+
+    //Codigo de la forma (con un bit para los atributos anidados) y valor segun el tipo
+    private void EscribirResto(String claveMapa, XAttribute atributo) throws IOException {
+        int tipo;
+        if (atributo instanceof XAttributeTimestamp) {
+            tipo = TIPO_FECHA;
+        } else if (atributo instanceof XAttributeDiscrete) {
+            tipo = TIPO_DISCRETO;
+        } else if (atributo instanceof XAttributeContinuous) {
+            tipo = TIPO_CONTINUO;
+        } else if (atributo instanceof XAttributeBoolean) {
+            tipo = TIPO_BOOLEAN;
+        } else if (atributo instanceof XAttributeID) {
+            tipo = TIPO_ID;
+        } else {
+            tipo = TIPO_LITERAL;
+        }
+        boolean anidados = atributo.hasAttributes();
+        this.resto.varint(((long) Forma(claveMapa, atributo, tipo).codigo << 1) | (anidados ? 1 : 0));
+        switch (tipo) {
+            case TIPO_FECHA:
+                //las fechas suelen estar cerca de la marca del evento
+                this.resto.varint(ZigZag(((XAttributeTimestamp) atributo).getValueMillis() - this.marcaAnterior));
+                break;
+            case TIPO_DISCRETO:
+                this.resto.varint(ZigZag(((XAttributeDiscrete) atributo).getValue()));
+                break;
+            case TIPO_CONTINUO:
+                this.resto.datos.writeDouble(((XAttributeContinuous) atributo).getValue());
+                break;
+            case TIPO_BOOLEAN:
+                this.resto.write(((XAttributeBoolean) atributo).getValue() ? 1 : 0);
+                break;
+            case TIPO_ID:
+                XID.write(((XAttributeID) atributo).getValue(), this.resto.datos);
+                break;
+            default:
+                this.resto.texto(atributo instanceof XAttributeLiteral ? ((XAttributeLiteral) atributo).getValue() : atributo.toString());
+                break;
+        }
+        if (anidados) {
+            XESPluginEventCodec.escribirAtributos(this.resto.datos, atributo.getAttributes());
+        }
+    }
+
+    private Forma Forma(String claveMapa, XAttribute atributo, int tipo) {
+        String prefijo = atributo.getExtension() == null ? "" : atributo.getExtension().getPrefix();
+        List<Forma> candidatas = this.formas.get(claveMapa);
+        if (candidatas == null) {
+            candidatas = new ArrayList<>(1);
+            this.formas.put(claveMapa, candidatas);
+        }
+        for (Forma forma : candidatas) {
+            if (forma.tipo == tipo && forma.clave.equals(atributo.getKey()) && forma.prefijo.equals(prefijo)) {
+                return forma;
+            }
+        }
+        Forma forma = new Forma(this.cantidadFormas++, claveMapa, atributo.getKey(), prefijo, tipo);
+        candidatas.add(forma);
+        this.formasNuevas.add(forma);
+        return forma;
+    }
+
+    private static long ZigZag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    private static long DesdeZigZag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+    //Solo van a una columna los atributos tal como los crea el paso; cualquier otro se guarda entero en el resto
+    private static boolean EnColumna(String clave, XAttribute atributo, String prefijo) {
+        return clave.equals(atributo.getKey()) && atributo.getExtension() != null
+                && prefijo.equals(atributo.getExtension().getPrefix()) && !atributo.hasAttributes();
+    }
+
+    private static int ColumnaDiccionario(String clave) {
+        for (int c = 0; c < CLAVES_DICCIONARIO.length; c++) {
+            if (CLAVES_DICCIONARIO[c].equals(clave)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private int Codigo(String valor) {
+        Integer codigo = this.codigos.get(valor);
+        if (codigo == null) {
+            codigo = this.codigos.size();
+            this.codigos.put(valor, codigo);
+            this.nuevos.add(valor);
+        }
+        return codigo;
+    }
+
+    private void EscribirBloque() throws IOException {
+        if (this.trazasBloque == 0) {
+            return;
+        }
+        Columna bloque = this.bloque;
+        bloque.reset();
+        bloque.varint(this.nuevos.size());
+        for (String valor : this.nuevos) {
+            bloque.texto(valor);
+        }
+        this.nuevos.clear();
+        bloque.varint(this.formasNuevas.size());
+        for (Forma forma : this.formasNuevas) {
+            bloque.texto(forma.claveMapa);
+            bloque.texto(forma.clave);
+            bloque.texto(forma.prefijo);
+            bloque.write(forma.tipo);
+        }
+        this.formasNuevas.clear();
+        bloque.varint(this.trazasBloque);
+        bloque.varint(this.eventosBloque);
+        List<Columna> columnas = new ArrayList<>();
+        columnas.add(this.casos);
+        columnas.add(this.atributosTraza);
+        columnas.add(this.eventosTraza);
+        columnas.addAll(Arrays.asList(this.diccionario));
+        columnas.add(this.marcas);
+        columnas.add(this.resto);
+        for (Columna columna : columnas) {
+            bloque.varint(columna.size());
+            columna.writeTo(bloque);
+            columna.reset();
+        }
+
+        this.compresor.reset();
+        this.compresor.setInput(bloque.toByteArray());
+        this.compresor.finish();
+        int n = 0;
+        while (!this.compresor.finished()) {
+            if (n == this.comprimido.length) {
+                this.comprimido = Arrays.copyOf(this.comprimido, this.comprimido.length * 2);
+            }
+            n += this.compresor.deflate(this.comprimido, n, this.comprimido.length - n);
+        }
+        this.salida.writeInt(n);
+        this.salida.writeInt(bloque.size());
+        this.salida.write(this.comprimido, 0, n);
+        this.trazasBloque = 0;
+        this.eventosBloque = 0;
+    }
+
+    private void EscribirGlobales(List<XAttribute> globales) throws IOException {
+        this.salida.writeInt(globales.size());
+        for (XAttribute global : globales) {
+            XESPluginEventCodec.escribirAtributo(this.salida, global.getKey(), global);
+        }
+    }
+
+    //--- lectura ---
+
+    /**
+     * Carga un log escrito por el paso. Las trazas son XESPluginTrace y los atributos de cada columna de
+     * diccionario se comparten entre los eventos con el mismo valor, igual que en el paso.
+     */
+    public static XLog leer(File archivo) throws IOException {
+        XESPluginFactory fabrica = XESPluginFactory.instance();
+        XExtensionManager extensiones = XExtensionManager.instance();
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(archivo), 1 << 16))) {
+            if (entrada.readInt() != MAGICO) {
+                throw new IOException(archivo + " is not a columnar XES log");
+            }
+            if (entrada.readInt() != VERSION) {
+                throw new IOException(archivo + " has an unsupported columnar log version");
+            }
+            List<XExtension> extensionesLog = new ArrayList<>();
+            for (int i = entrada.readInt(); i > 0; i--) {
+                entrada.readUTF();
+                String prefijo = entrada.readUTF();
+                String uri = entrada.readUTF();
+                XExtension extension = extensiones.getByPrefix(prefijo);
+                if (extension == null || !extension.getUri().toString().equals(uri)) {
+                    extension = extensiones.getByUri(URI.create(uri));
+                }
+                if (extension != null) {
+                    extensionesLog.add(extension);
+                }
+            }
+            List<XAttribute> globalesTraza = LeerGlobales(entrada);
+            List<XAttribute> globalesEvento = LeerGlobales(entrada);
+            List<XEventClassifier> clasificadores = new ArrayList<>();
+            for (int i = entrada.readInt(); i > 0; i--) {
+                String nombre = entrada.readUTF();
+                String[] claves = new String[entrada.readInt()];
+                for (int k = 0; k < claves.length; k++) {
+                    claves[k] = entrada.readUTF();
+                }
+                clasificadores.add(new XEventAttributeClassifier(nombre, claves));
+            }
+            XLog log = fabrica.createLog(XESPluginEventCodec.leerAtributos(entrada));
+            log.getExtensions().addAll(extensionesLog);
+            log.getGlobalTraceAttributes().addAll(globalesTraza);
+            log.getGlobalEventAttributes().addAll(globalesEvento);
+            log.getClassifiers().addAll(clasificadores);
+
+            XExtension[] extensionesDiccionario = new XExtension[CLAVES_DICCIONARIO.length];
+            for (int c = 0; c < extensionesDiccionario.length; c++) {
+                extensionesDiccionario[c] = extensiones.getByPrefix(PREFIJOS_DICCIONARIO[c]);
+            }
+            XExtension extensionMarca = extensiones.getByPrefix("time");
+            //identificadores secuenciales: el XID aleatorio de cada evento costaria mas que leerlo
+            XESPluginIdGenerator generadorIds = new XESPluginIdGenerator(XESPluginIdGenerator.ESTRATEGIA_SECUENCIAL);
+            List<String> valores = new ArrayList<>();
+            List<Forma> formas = new ArrayList<>();
+            XAttribute[][] compartidos = new XAttribute[CLAVES_DICCIONARIO.length][0];
+            Inflater descompresor = new Inflater();
+            byte[] comprimido = new byte[1 << 16];
+            byte[] datos = new byte[1 << 20];
+            long marca = 0;
+            try {
+                int longitud;
+                while ((longitud = entrada.readInt()) != 0) {
+                    int original = entrada.readInt();
+                    if (comprimido.length < longitud) {
+                        comprimido = new byte[longitud];
+                    }
+                    if (datos.length < original) {
+                        datos = new byte[original];
+                    }
+                    entrada.readFully(comprimido, 0, longitud);
+                    descompresor.reset();
+                    descompresor.setInput(comprimido, 0, longitud);
+                    try {
+                        if (descompresor.inflate(datos, 0, original) != original) {
+                            throw new IOException(archivo + " has a truncated block");
+                        }
+                    } catch (DataFormatException e) {
+                        throw new IOException(archivo + " has a corrupt block", e);
+                    }
+
+                    Lector bloque = new Lector(datos, 0, original);
+                    for (long i = bloque.varint(); i > 0; i--) {
+                        valores.add(bloque.texto());
+                    }
+                    for (long i = bloque.varint(); i > 0; i--) {
+                        Forma forma = new Forma(formas.size(), bloque.texto().intern(), bloque.texto().intern(), bloque.texto(), bloque.read());
+                        forma.extension = forma.prefijo.isEmpty() ? null : extensiones.getByPrefix(forma.prefijo);
+                        formas.add(forma);
+                    }
+                    int trazas = (int) bloque.varint();
+                    bloque.varint(); //eventos del bloque
+                    Lector casos = bloque.columna();
+                    Lector atributosTraza = bloque.columna();
+                    Lector eventosTraza = bloque.columna();
+                    Lector[] diccionario = new Lector[CLAVES_DICCIONARIO.length];
+                    for (int c = 0; c < diccionario.length; c++) {
+                        diccionario[c] = bloque.columna();
+                        if (compartidos[c].length < valores.size()) {
+                            compartidos[c] = Arrays.copyOf(compartidos[c], valores.size());
+                        }
+                    }
+                    Lector marcas = bloque.columna();
+                    Lector resto = bloque.columna();
+                    int[] codigos = new int[CLAVES_DICCIONARIO.length];
+
+                    for (int t = 0; t < trazas; t++) {
+                        String caso = casos.texto();
+                        int cantidad = atributosTraza.datos.readUnsignedShort();
+                        XAttributeMap mapaTraza = new XESPluginAttributeMap(caso == null ? cantidad : cantidad + 1);
+                        XESPluginEventCodec.leerAtributos(atributosTraza.datos, cantidad, mapaTraza);
+                        if (caso != null) {
+                            mapaTraza.put(CLAVE_CASO, new XAttributeLiteralImpl("concept:name", caso));
+                        }
+                        XESPluginTrace traza = fabrica.createTrace(mapaTraza);
+                        traza.setCaso(caso);
+                        int eventos = (int) eventosTraza.varint();
+                        traza.ensureCapacity(eventos);
+                        for (int e = 0; e < eventos; e++) {
+                            int presentes = 0;
+                            for (int c = 0; c < codigos.length; c++) {
+                                codigos[c] = (int) diccionario[c].varint();
+                                if (codigos[c] != 0) {
+                                    presentes++;
+                                }
+                            }
+                            long valorMarca = marcas.varint();
+                            boolean conMarca = valorMarca != 0;
+                            if (conMarca) {
+                                marca += DesdeZigZag(valorMarca - 1);
+                                presentes++;
+                            }
+                            int otros = (int) resto.varint();
+                            XAttributeMap mapa = new XESPluginAttributeMap(otros + presentes);
+                            for (int c = 0; c < codigos.length; c++) {
+                                if (codigos[c] != 0) {
+                                    int codigo = codigos[c] - 1;
+                                    XAttribute atributo = compartidos[c][codigo];
+                                    if (atributo == null) {
+                                        atributo = new XAttributeLiteralImpl(CLAVES_DICCIONARIO[c], valores.get(codigo), extensionesDiccionario[c]);
+                                        compartidos[c][codigo] = atributo;
+                                    }
+                                    mapa.put(CLAVES_DICCIONARIO[c], atributo);
+                                }
+                            }
+                            if (conMarca) {
+                                mapa.put(CLAVE_MARCA, new XAttributeTimestampImpl(CLAVE_MARCA, marca, extensionMarca));
+                            }
+                            for (int k = 0; k < otros; k++) {
+                                long codigo = resto.varint();
+                                if ((codigo >>> 1) >= formas.size()) {
+                                    throw new IOException(archivo + " refers to an unknown attribute");
+                                }
+                                Forma forma = formas.get((int) (codigo >>> 1));
+                                XAttribute atributo = LeerResto(resto, forma, marca);
+                                if ((codigo & 1) != 0) {
+                                    atributo.setAttributes(XESPluginEventCodec.leerAtributos(resto.datos));
+                                }
+                                mapa.put(forma.claveMapa, atributo);
+                            }
+                            traza.add(fabrica.createEvent(generadorIds.siguiente(), mapa));
+                        }
+                        log.add(traza);
+                    }
+                }
+            } finally {
+                descompresor.end();
+            }
+            return log;
+        }
+    }
+
+    private static XAttribute LeerResto(Lector resto, Forma forma, long marca) throws IOException {
+        switch (forma.tipo) {
+            case TIPO_FECHA:
+                return new XAttributeTimestampImpl(forma.clave, marca + DesdeZigZag(resto.varint()), forma.extension);
+            case TIPO_DISCRETO:
+                return new XAttributeDiscreteImpl(forma.clave, DesdeZigZag(resto.varint()), forma.extension);
+            case TIPO_CONTINUO:
+                return new XAttributeContinuousImpl(forma.clave, resto.datos.readDouble(), forma.extension);
+            case TIPO_BOOLEAN:
+                return new XAttributeBooleanImpl(forma.clave, resto.read() == 1, forma.extension);
+            case TIPO_ID:
+                return new XAttributeIDImpl(forma.clave, XID.read(resto.datos), forma.extension);
+            case TIPO_LITERAL:
+                return new XAttributeLiteralImpl(forma.clave, resto.texto(), forma.extension);
+            default:
+                throw new IOException("Unknown attribute type " + forma.tipo + " for key " + forma.clave);
+        }
+    }
+
+    private static List<XAttribute> LeerGlobales(DataInputStream entrada) throws IOException {
+        int cantidad = entrada.readInt();
+        List<XAttribute> globales = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            XAttributeMap global = new XESPluginAttributeMap(1);
+            XESPluginEventCodec.leerAtributos(entrada, 1, global);
+            globales.addAll(global.values());
+        }
+        return globales;
+    }
+}
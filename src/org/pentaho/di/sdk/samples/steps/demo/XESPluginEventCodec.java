@@ -0,0 +1,167 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.extension.XExtension;
+import org.deckfour.xes.extension.XExtensionManager;
+import org.deckfour.xes.id.XID;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeBoolean;
+import org.deckfour.xes.model.XAttributeContinuous;
+import org.deckfour.xes.model.XAttributeDiscrete;
+import org.deckfour.xes.model.XAttributeID;
+import org.deckfour.xes.model.XAttributeLiteral;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XAttributeTimestamp;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.impl.XAttributeBooleanImpl;
+import org.deckfour.xes.model.impl.XAttributeContinuousImpl;
+import org.deckfour.xes.model.impl.XAttributeDiscreteImpl;
+import org.deckfour.xes.model.impl.XAttributeIDImpl;
+import org.deckfour.xes.model.impl.XAttributeLiteralImpl;
+import org.deckfour.xes.model.impl.XAttributeTimestampImpl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+//Codificacion binaria compacta de eventos y mapas de atributos, para los modos que sacan eventos del heap
+//(volcado a disco, almacen de eventos). Se guarda la clave del mapa ademas de la del atributo porque no siempre
+//coinciden ("IDKeyXID" -> "id"), y la extension solo por su prefijo. Al leer se reconstruye el mismo mapa,
+//en el mismo orden, por lo que el XES que se escribe es identico al de los eventos originales.
+
+public final class XESPluginEventCodec {
+
+    private static final byte TIPO_LITERAL = 0;
+    private static final byte TIPO_BOOLEAN = 1;
+    private static final byte TIPO_CONTINUO = 2;
+    private static final byte TIPO_DISCRETO = 3;
+    private static final byte TIPO_FECHA = 4;
+    private static final byte TIPO_ID = 5;
+
+    private XESPluginEventCodec() {
+    }
+
+    public static void escribirEvento(DataOutput salida, XEvent evento) throws IOException {
+        XID.write(evento.getID(), salida);
+        escribirAtributos(salida, evento.getAttributes());
+    }
+
+    public static XEvent leerEvento(DataInput entrada, XESPluginFactory fabrica) throws IOException {
+        XID id = XID.read(entrada);
+        return fabrica.createEvent(id, leerAtributos(entrada));
+    }
+
+    /**
+     * Escribe el mapa de atributos; un mapa nulo se escribe como un mapa vacio.
+     */
+    public static void escribirAtributos(DataOutput salida, XAttributeMap mapa) throws IOException {
+        if (mapa == null) {
+            salida.writeShort(0);
+            return;
+        }
+        salida.writeShort(mapa.size());
+        for (Map.Entry<String, XAttribute> entrada : mapa.entrySet()) {
+            escribirAtributo(salida, entrada.getKey(), entrada.getValue());
+        }
+    }
+
+    /**
+     * Escribe una entrada de un mapa de atributos. Quien escribe las entradas por separado escribe antes
+     * la cantidad (writeShort), asi se leen con leerAtributos.
+     */
+    public static void escribirAtributo(DataOutput salida, String clave, XAttribute atributo) throws IOException {
+        salida.writeUTF(clave);
+        //la clave del atributo solo se repite si es distinta de la del mapa
+        boolean mismaClave = clave.equals(atributo.getKey());
+        salida.writeBoolean(mismaClave);
+        if (!mismaClave) {
+            salida.writeUTF(atributo.getKey());
+        }
+        XExtension extension = atributo.getExtension();
+        salida.writeUTF(extension == null ? "" : extension.getPrefix());
+        if (atributo instanceof XAttributeTimestamp) {
+            salida.writeByte(TIPO_FECHA);
+            salida.writeLong(((XAttributeTimestamp) atributo).getValueMillis());
+        } else if (atributo instanceof XAttributeDiscrete) {
+            salida.writeByte(TIPO_DISCRETO);
+            salida.writeLong(((XAttributeDiscrete) atributo).getValue());
+        } else if (atributo instanceof XAttributeContinuous) {
+            salida.writeByte(TIPO_CONTINUO);
+            salida.writeDouble(((XAttributeContinuous) atributo).getValue());
+        } else if (atributo instanceof XAttributeBoolean) {
+            salida.writeByte(TIPO_BOOLEAN);
+            salida.writeBoolean(((XAttributeBoolean) atributo).getValue());
+        } else if (atributo instanceof XAttributeID) {
+            salida.writeByte(TIPO_ID);
+            XID.write(((XAttributeID) atributo).getValue(), salida);
+        } else {
+            salida.writeByte(TIPO_LITERAL);
+            escribirTexto(salida, atributo instanceof XAttributeLiteral ? ((XAttributeLiteral) atributo).getValue() : atributo.toString());
+        }
+        //atributos anidados, por si algun atributo los trae
+        escribirAtributos(salida, atributo.hasAttributes() ? atributo.getAttributes() : null);
+    }
+
+    public static XAttributeMap leerAtributos(DataInput entrada) throws IOException {
+        int cantidad = entrada.readUnsignedShort();
+        XAttributeMap mapa = new XESPluginAttributeMap(cantidad);
+        leerAtributos(entrada, cantidad, mapa);
+        return mapa;
+    }
+
+    /**
+     * Lee entradas escritas con escribirAtributo y las agrega al mapa.
+     */
+    public static void leerAtributos(DataInput entrada, int cantidad, XAttributeMap mapa) throws IOException {
+        XExtensionManager extensiones = XExtensionManager.instance();
+        for (int i = 0; i < cantidad; i++) {
+            String claveMapa = entrada.readUTF().intern();
+            String clave = entrada.readBoolean() ? claveMapa : entrada.readUTF().intern();
+            String prefijo = entrada.readUTF();
+            XExtension extension = prefijo.isEmpty() ? null : extensiones.getByPrefix(prefijo);
+            XAttribute atributo;
+            byte tipo = entrada.readByte();
+            switch (tipo) {
+                case TIPO_FECHA:
+                    atributo = new XAttributeTimestampImpl(clave, entrada.readLong(), extension);
+                    break;
+                case TIPO_DISCRETO:
+                    atributo = new XAttributeDiscreteImpl(clave, entrada.readLong(), extension);
+                    break;
+                case TIPO_CONTINUO:
+                    atributo = new XAttributeContinuousImpl(clave, entrada.readDouble(), extension);
+                    break;
+                case TIPO_BOOLEAN:
+                    atributo = new XAttributeBooleanImpl(clave, entrada.readBoolean(), extension);
+                    break;
+                case TIPO_ID:
+                    atributo = new XAttributeIDImpl(clave, XID.read(entrada), extension);
+                    break;
+                case TIPO_LITERAL:
+                    atributo = new XAttributeLiteralImpl(clave, leerTexto(entrada), extension);
+                    break;
+                default:
+                    throw new IOException("Unknown attribute type " + tipo + " for key " + clave);
+            }
+            XAttributeMap anidados = leerAtributos(entrada);
+            if (!anidados.isEmpty()) {
+                atributo.setAttributes(anidados);
+            }
+            mapa.put(claveMapa, atributo);
+        }
+    }
+
+    //writeUTF esta limitado a 64 KB, los valores literales pueden ser mas largos
+    public static void escribirTexto(DataOutput salida, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        salida.writeInt(bytes.length);
+        salida.write(bytes);
+    }
+
+    public static String leerTexto(DataInput entrada) throws IOException {
+        byte[] bytes = new byte[entrada.readInt()];
+        entrada.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,154 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Date;
+
+//Registro de un evento que se guarda fuera de las trazas en memoria (corridas ordenadas, particiones, almacen).
+//La instancia de proceso, el orden de llegada de la fila y la marca de tiempo van aparte, para poder ordenar
+//y agrupar sin decodificar; el evento, el costo de la traza y los atributos de tipo Case de la fila van codificados.
+
+public class XESPluginEventRecord {
+
+    //mismo orden que tendria la traza en memoria: por caso, luego por marca de tiempo y, a igual marca, por llegada
+    public static final Comparator<XESPluginEventRecord> POR_CASO_Y_MARCA = new Comparator<XESPluginEventRecord>() {
+        @Override
+        public int compare(XESPluginEventRecord a, XESPluginEventRecord b) {
+            int c = a.caso.compareTo(b.caso);
+            if (c != 0) {
+                return c;
+            }
+            c = Long.compare(a.marca, b.marca);
+            return c != 0 ? c : Long.compare(a.orden, b.orden);
+        }
+    };
+
+    //sobrecosto aproximado de cada registro en el heap (objeto, String, arreglo)
+    private static final int SOBRECOSTO = 96;
+
+    private final String caso;
+    private final long orden;
+    private final long marca; //Long.MIN_VALUE si el evento no tiene marca de tiempo
+    private final byte[] datos;
+
+    //contenido decodificado, solo despues de decodificar()
+    private XEvent evento;
+    private Double costo;
+    private XAttributeMap atributosCaso;
+
+    public XESPluginEventRecord(String caso, long orden, long marca, byte[] datos) {
+        this.caso = caso;
+        this.orden = orden;
+        this.marca = marca;
+        this.datos = datos;
+    }
+
+    /**
+     * Codifica el evento de una fila.
+     *
+     * @param orden         numero de la fila, para conservar el orden de llegada
+     * @param marca         marca de tiempo del evento, o null
+     * @param costo         costo total de la traza que trae la fila, o null
+     * @param atributosCaso atributos de tipo Case que trae la fila, o null
+     */
+    public static XESPluginEventRecord crear(String caso, long orden, Date marca, XEvent evento, Double costo, XAttributeMap atributosCaso) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream salida = new DataOutputStream(bytes);
+        XESPluginEventCodec.escribirEvento(salida, evento);
+        salida.writeBoolean(costo != null);
+        if (costo != null) {
+            salida.writeDouble(costo);
+        }
+        XESPluginEventCodec.escribirAtributos(salida, atributosCaso);
+        salida.flush();
+        return new XESPluginEventRecord(caso, orden, marca == null ? Long.MIN_VALUE : marca.getTime(), bytes.toByteArray());
+    }
+
+    /**
+     * Reconstruye el evento, el costo y los atributos de tipo Case.
+     */
+    public void decodificar(XESPluginFactory fabrica) throws IOException {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(this.datos));
+        this.evento = XESPluginEventCodec.leerEvento(entrada, fabrica);
+        this.costo = entrada.readBoolean() ? entrada.readDouble() : null;
+        XAttributeMap atributos = XESPluginEventCodec.leerAtributos(entrada);
+        this.atributosCaso = atributos.isEmpty() ? null : atributos;
+    }
+
+    public String getCaso() {
+        return caso;
+    }
+
+    public long getOrden() {
+        return orden;
+    }
+
+    public long getMarca() {
+        return marca;
+    }
+
+    /**
+     * @return la marca de tiempo del evento, o null si no tiene
+     */
+    public Date getFechaMarca() {
+        return this.marca == Long.MIN_VALUE ? null : new Date(this.marca);
+    }
+
+    public byte[] getDatos() {
+        return datos;
+    }
+
+    public XEvent getEvento() {
+        return evento;
+    }
+
+    public Double getCosto() {
+        return costo;
+    }
+
+    public XAttributeMap getAtributosCaso() {
+        return atributosCaso;
+    }
+
+    /**
+     * @return bytes aproximados que ocupa el registro en el heap
+     */
+    public long tamano() {
+        return SOBRECOSTO + 2L * this.caso.length() + this.datos.length;
+    }
+
+    public void escribir(DataOutput salida) throws IOException {
+        XESPluginEventCodec.escribirTexto(salida, this.caso);
+        salida.writeLong(this.orden);
+        salida.writeLong(this.marca);
+        salida.writeInt(this.datos.length);
+        salida.write(this.datos);
+    }
+
+    /**
+     * @return el siguiente registro, o null al final del fichero
+     */
+    public static XESPluginEventRecord leer(DataInput entrada) throws IOException {
+        String caso;
+        try {
+            caso = XESPluginEventCodec.leerTexto(entrada);
+        } catch (EOFException e) {
+            return null;
+        }
+        long orden = entrada.readLong();
+        long marca = entrada.readLong();
+        byte[] datos = new byte[entrada.readInt()];
+        entrada.readFully(datos);
+        return new XESPluginEventRecord(caso, orden, marca, datos);
+    }
+}
@@ -0,0 +1,183 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Almacen de eventos fuera del heap: un unico fichero proyectado en memoria por segmentos, donde los registros
+//de eventos se agregan al final sin reescribir nunca nada. Cada registro guarda la posicion del registro anterior
+//de la misma traza, asi que una traza en el heap se reduce a su cadena (ultima posicion y cantidad de eventos).
+//Al final cada cadena se recorre hacia atras y los eventos se devuelven en orden de llegada.
+//
+//Formato de un registro: longitud (int), anterior (long), orden (long), marca (long), datos codificados.
+
+public class XESPluginEventStore implements Closeable {
+
+    //tamaño de cada segmento proyectado; un registro nunca queda partido entre dos segmentos
+    public static final int TAMANO_SEGMENTO = 1 << 28;
+
+    private static final int CABECERA = 4 + 8 + 8 + 8;
+    private static final long SIN_ANTERIOR = -1L;
+
+    //Cadena de eventos de una traza: es lo unico que queda en el heap por cada caso
+    public static class Cadena {
+        private final String caso;
+        private long ultimo = SIN_ANTERIOR;
+        private int eventos;
+
+        public Cadena(String caso) {
+            this.caso = caso;
+        }
+
+        public String getCaso() {
+            return caso;
+        }
+
+        public int getEventos() {
+            return eventos;
+        }
+    }
+
+    private final File archivo;
+    private RandomAccessFile acceso;
+    private FileChannel canal;
+    private final List<MappedByteBuffer> segmentos;
+    private MappedByteBuffer actual;
+    private long registros;
+
+    /**
+     * @param directorio directorio para el fichero del almacen, o null para el temporal del sistema
+     */
+    public XESPluginEventStore(File directorio) throws IOException {
+        //se borra en close(), que el paso llama tambien si la transformacion se detiene
+        this.archivo = File.createTempFile("xesplugin-store", ".bin", directorio);
+        this.acceso = new RandomAccessFile(this.archivo, "rw");
+        this.canal = this.acceso.getChannel();
+        this.segmentos = new ArrayList<>();
+        this.registros = 0;
+    }
+
+    /**
+     * Agrega el registro al final del almacen y lo encadena con los anteriores de su traza.
+     */
+    public void agregar(Cadena cadena, XESPluginEventRecord registro) throws IOException {
+        byte[] datos = registro.getDatos();
+        int longitud = CABECERA + datos.length;
+        if (longitud > TAMANO_SEGMENTO) {
+            throw new IOException("Event record of " + longitud + " bytes does not fit in a store segment");
+        }
+        if (this.actual == null || this.actual.remaining() < longitud) {
+            NuevoSegmento();
+        }
+        long posicion = ((long) (this.segmentos.size() - 1) << 32) | this.actual.position();
+        this.actual.putInt(datos.length);
+        this.actual.putLong(cadena.ultimo);
+        this.actual.putLong(registro.getOrden());
+        this.actual.putLong(registro.getMarca());
+        this.actual.put(datos);
+        cadena.ultimo = posicion;
+        cadena.eventos++;
+        this.registros++;
+    }
+
+    public long getRegistros() {
+        return registros;
+    }
+
+    /**
+     * @return bytes ocupados por los segmentos proyectados
+     */
+    public long getBytes() {
+        return this.segmentos.isEmpty() ? 0 : (long) (this.segmentos.size() - 1) * TAMANO_SEGMENTO + this.actual.position();
+    }
+
+    /**
+     * @return los registros de la traza en orden de llegada
+     */
+    public List<XESPluginEventRecord> leer(Cadena cadena) {
+        List<XESPluginEventRecord> lista = new ArrayList<>(cadena.eventos);
+        long posicion = cadena.ultimo;
+        while (posicion != SIN_ANTERIOR) {
+            //se usa una vista propia para no mover la posicion de escritura del segmento
+            ByteBuffer segmento = this.segmentos.get((int) (posicion >>> 32)).duplicate();
+            segmento.position((int) posicion);
+            byte[] datos = new byte[segmento.getInt()];
+            long anterior = segmento.getLong();
+            long orden = segmento.getLong();
+            long marca = segmento.getLong();
+            segmento.get(datos);
+            lista.add(new XESPluginEventRecord(cadena.caso, orden, marca, datos));
+            posicion = anterior;
+        }
+        Collections.reverse(lista);
+        return lista;
+    }
+
+    /**
+     * Suelta las proyecciones y borra el fichero.
+     *
+     * @throws IOException si el fichero no se pudo borrar
+     */
+    @Override
+    public void close() throws IOException {
+        //en Windows un fichero proyectado no se puede borrar: las proyecciones se sueltan antes, sin esperar al GC
+        for (MappedByteBuffer segmento : this.segmentos) {
+            Liberar(segmento);
+        }
+        this.segmentos.clear();
+        this.actual = null;
+        try {
+            if (this.canal != null) {
+                this.canal.close();
+            }
+            if (this.acceso != null) {
+                this.acceso.close();
+            }
+        } catch (IOException e) {
+            //el fichero se borra a continuacion
+        }
+        this.canal = null;
+        this.acceso = null;
+        if (this.archivo.exists() && !this.archivo.delete()) {
+            throw new IOException("Unable to delete the event store " + this.archivo);
+        }
+    }
+
+    //Desproyecta el buffer; despues no se puede volver a usar. Desde Java 9 se hace con Unsafe.invokeCleaner y
+    //en Java 8 con el Cleaner del buffer. Si ninguno esta disponible la proyeccion se suelta con el GC
+    private static void Liberar(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invocar = unsafe.getMethod("invokeCleaner", ByteBuffer.class);
+                Field instancia = unsafe.getDeclaredField("theUnsafe");
+                instancia.setAccessible(true);
+                invocar.invoke(instancia.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object limpiador = cleaner.invoke(buffer);
+                if (limpiador != null) {
+                    limpiador.getClass().getMethod("clean").invoke(limpiador);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //sin acceso a la liberacion explicita
+        }
+    }
+
+    private void NuevoSegmento() throws IOException {
+        long inicio = (long) this.segmentos.size() * TAMANO_SEGMENTO;
+        this.actual = this.canal.map(FileChannel.MapMode.READ_WRITE, inicio, TAMANO_SEGMENTO);
+        this.segmentos.add(this.actual);
+    }
+}
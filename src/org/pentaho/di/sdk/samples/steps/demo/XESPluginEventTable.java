@@ -0,0 +1,170 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeLiteral;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XAttributeTimestamp;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XTrace;
+import org.deckfour.xes.util.XsDateTimeConversion;
+import org.deckfour.xes.util.XsDateTimeConversionJava7;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+//Tabla plana de eventos (CSV o TSV): una fila por evento, con los atributos de la traza repetidos en cada fila.
+//Las filas se escriben a medida que se completa cada traza, en el orden en que el paso emite las trazas y con los
+//eventos ya ordenados por marca de tiempo, sin retener nada. Las columnas se fijan al inicio a partir del mapeo
+//de la vista; un atributo que el evento no tiene queda vacio. Las fechas van en el mismo formato que en el XES y
+//los campos con el separador, comillas o saltos de linea van entre comillas dobles (RFC 4180).
+
+public class XESPluginEventTable implements Closeable {
+
+    //Columna de la tabla: su nombre en la cabecera y de donde sale el valor
+    public static class Columna {
+        private final String nombre;
+        private final String claveMapa;
+        private final boolean deCaso;
+
+        /**
+         * @param claveMapa clave del atributo en el mapa del evento, o en el de la traza si es de caso
+         */
+        public Columna(String nombre, String claveMapa, boolean deCaso) {
+            this.nombre = nombre;
+            this.claveMapa = claveMapa;
+            this.deCaso = deCaso;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+    }
+
+    private final File archivo;
+    private final OutputStream destino;
+    private final Writer salida;
+    private final char separador;
+    private final Columna[] columnas;
+    private final XsDateTimeConversion conversionFechas;
+    private final String[] valoresCaso; //valores de las columnas de caso de la traza actual
+    private long ultimaFecha = Long.MIN_VALUE;
+    private String ultimaFechaTexto;
+    private long filasEscritas;
+
+    /**
+     * Escribe la cabecera de la tabla; el fichero se sobrescribe si existe.
+     *
+     * @param nivelCompresion nivel de gzip, o -1 para escribir el texto sin comprimir
+     * @param hilos           hilos para comprimir
+     * @param separador       ',' para CSV o '\t' para TSV
+     */
+    public XESPluginEventTable(File archivo, int nivelCompresion, int hilos, char separador, List<Columna> columnas) throws IOException {
+        this.archivo = archivo;
+        OutputStream destino = new FileOutputStream(archivo);
+        if (nivelCompresion >= 0) {
+            destino = new XESPluginGzipOutputStream(destino, nivelCompresion, hilos);
+        }
+        this.destino = destino;
+        this.salida = new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8), 1 << 16);
+        this.separador = separador;
+        this.columnas = columnas.toArray(new Columna[columnas.size()]);
+        this.conversionFechas = new XsDateTimeConversionJava7();
+        this.valoresCaso = new String[this.columnas.length];
+        for (int c = 0; c < this.columnas.length; c++) {
+            if (c > 0) {
+                this.salida.write(this.separador);
+            }
+            Campo(this.columnas[c].nombre);
+        }
+        this.salida.write('\n');
+    }
+
+    /**
+     * Escribe una fila por cada evento de la traza, en el orden de la traza.
+     */
+    public void escribirTraza(XTrace traza) throws IOException {
+        XAttributeMap atributosTraza = traza.getAttributes();
+        for (int c = 0; c < this.columnas.length; c++) {
+            this.valoresCaso[c] = this.columnas[c].deCaso ? Valor(atributosTraza.get(this.columnas[c].claveMapa)) : null;
+        }
+        for (XEvent evento : traza) {
+            XAttributeMap atributos = evento.getAttributes();
+            for (int c = 0; c < this.columnas.length; c++) {
+                if (c > 0) {
+                    this.salida.write(this.separador);
+                }
+                String valor = this.columnas[c].deCaso ? this.valoresCaso[c] : Valor(atributos.get(this.columnas[c].claveMapa));
+                if (valor != null) {
+                    Campo(valor);
+                }
+            }
+            this.salida.write('\n');
+            this.filasEscritas++;
+        }
+    }
+
+    public long getFilasEscritas() {
+        return filasEscritas;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.salida.close();
+    }
+
+    /**
+     * Descarta el fichero sin volcar las filas pendientes, para cuando la escritura no termino.
+     */
+    public void abortar() throws IOException {
+        if (this.destino instanceof XESPluginGzipOutputStream) {
+            ((XESPluginGzipOutputStream) this.destino).abortar();
+        } else {
+            this.destino.close();
+        }
+        if (this.archivo.exists() && !this.archivo.delete()) {
+            throw new IOException("Unable to delete " + this.archivo);
+        }
+    }
+
+    private String Valor(XAttribute atributo) {
+        if (atributo == null) {
+            return null;
+        }
+        if (atributo instanceof XAttributeLiteral) {
+            return ((XAttributeLiteral) atributo).getValue();
+        }
+        if (atributo instanceof XAttributeTimestamp) {
+            //los eventos seguidos suelen repetir la fecha
+            long valor = ((XAttributeTimestamp) atributo).getValueMillis();
+            if (valor != this.ultimaFecha || this.ultimaFechaTexto == null) {
+                this.ultimaFechaTexto = this.conversionFechas.format(((XAttributeTimestamp) atributo).getValue());
+                this.ultimaFecha = valor;
+            }
+            return this.ultimaFechaTexto;
+        }
+        return atributo.toString();
+    }
+
+    private void Campo(String valor) throws IOException {
+        boolean comillas = false;
+        for (int i = 0; i < valor.length() && !comillas; i++) {
+            char caracter = valor.charAt(i);
+            comillas = caracter == this.separador || caracter == '"' || caracter == '\n' || caracter == '\r';
+        }
+        if (!comillas) {
+            this.salida.write(valor);
+            return;
+        }
+        this.salida.write('"');
+        this.salida.write(valor.replace("\"", "\"\""));
+        this.salida.write('"');
+    }
+}
@@ -0,0 +1,212 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+//Ordenamiento externo de registros de eventos con memoria acotada. Los registros se acumulan en memoria
+//hasta alcanzar el limite; entonces se ordenan (caso, marca de tiempo, llegada) y se vuelcan a disco como
+//una corrida ordenada. Al final se fusionan todas las corridas (fusion de k vias) y los registros salen en
+//orden, uno a uno, por lo que la memoria no depende del tamaño del log sino del limite configurado.
+
+public class XESPluginExternalSorter implements Closeable {
+
+    //corridas abiertas a la vez durante una fusion; si hay mas se fusionan por grupos en varias pasadas
+    public static final int MAX_FUSION = 64;
+
+    private static final int BUFFER_ESCRITURA = 1 << 20;
+    private static final int BUFFER_LECTURA = 1 << 18;
+
+    private final File directorio;
+    private final long limiteBytes;
+    private ArrayList<XESPluginEventRecord> pendientes;
+    private long bytesPendientes;
+    private final List<File> corridas;
+    private long registros;
+
+    //estado de la lectura final
+    private int posicion; //cuando todo cupo en memoria
+    private PriorityQueue<Corrida> fusion; //cuando hubo corridas en disco
+
+    /**
+     * @param directorio  directorio para las corridas, o null para el temporal del sistema
+     * @param limiteBytes bytes aproximados de registros que se mantienen en memoria antes de volcar una corrida
+     */
+    public XESPluginExternalSorter(File directorio, long limiteBytes) {
+        this.directorio = directorio;
+        this.limiteBytes = limiteBytes;
+        this.pendientes = new ArrayList<>();
+        this.bytesPendientes = 0;
+        this.corridas = new ArrayList<>();
+        this.registros = 0;
+    }
+
+    public void agregar(XESPluginEventRecord registro) throws IOException {
+        this.pendientes.add(registro);
+        this.bytesPendientes += registro.tamano();
+        this.registros++;
+        if (this.bytesPendientes >= this.limiteBytes) {
+            VolcarCorrida();
+        }
+    }
+
+    public long getRegistros() {
+        return registros;
+    }
+
+    /**
+     * @return cantidad de corridas que se han volcado a disco
+     */
+    public int getCorridas() {
+        return this.corridas.size();
+    }
+
+    /**
+     * Termina la fase de carga: a partir de aqui los registros se obtienen en orden con siguiente().
+     */
+    public void terminar() throws IOException {
+        if (this.corridas.isEmpty()) {
+            //todo cupo en memoria, no hace falta tocar el disco
+            this.pendientes.sort(XESPluginEventRecord.POR_CASO_Y_MARCA);
+            this.posicion = 0;
+            return;
+        }
+        if (!this.pendientes.isEmpty()) {
+            VolcarCorrida();
+        }
+        this.pendientes = null;
+        //fusiones intermedias para no abrir mas de MAX_FUSION ficheros a la vez
+        while (this.corridas.size() > MAX_FUSION) {
+            List<File> grupo = new ArrayList<>(this.corridas.subList(0, MAX_FUSION));
+            this.corridas.subList(0, MAX_FUSION).clear();
+            File destino = NuevaCorrida();
+            try (DataOutputStream salida = AbrirEscritura(destino)) {
+                PriorityQueue<Corrida> cola = AbrirFusion(grupo);
+                XESPluginEventRecord registro;
+                while ((registro = Siguiente(cola)) != null) {
+                    registro.escribir(salida);
+                }
+            }
+            for (File f : grupo) {
+                f.delete();
+            }
+            this.corridas.add(destino);
+        }
+        this.fusion = AbrirFusion(this.corridas);
+    }
+
+    /**
+     * @return el siguiente registro en orden, o null si no quedan
+     */
+    public XESPluginEventRecord siguiente() throws IOException {
+        if (this.fusion != null) {
+            return Siguiente(this.fusion);
+        }
+        if (this.pendientes != null && this.posicion < this.pendientes.size()) {
+            //se suelta la referencia para que el registro se pueda liberar en cuanto se escriba
+            return this.pendientes.set(this.posicion++, null);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if (this.fusion != null) {
+            for (Corrida corrida : this.fusion) {
+                corrida.cerrar();
+            }
+            this.fusion = null;
+        }
+        for (File f : this.corridas) {
+            f.delete();
+        }
+        this.corridas.clear();
+        this.pendientes = null;
+    }
+
+    private void VolcarCorrida() throws IOException {
+        this.pendientes.sort(XESPluginEventRecord.POR_CASO_Y_MARCA);
+        File archivo = NuevaCorrida();
+        try (DataOutputStream salida = AbrirEscritura(archivo)) {
+            for (XESPluginEventRecord registro : this.pendientes) {
+                registro.escribir(salida);
+            }
+        }
+        this.corridas.add(archivo);
+        this.pendientes = new ArrayList<>();
+        this.bytesPendientes = 0;
+    }
+
+    private File NuevaCorrida() throws IOException {
+        //se borra en close(), que el paso llama tambien si la transformacion se detiene
+        return File.createTempFile("xesplugin-run", ".bin", this.directorio);
+    }
+
+    private static DataOutputStream AbrirEscritura(File archivo) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(archivo), BUFFER_ESCRITURA));
+    }
+
+    private static PriorityQueue<Corrida> AbrirFusion(List<File> archivos) throws IOException {
+        PriorityQueue<Corrida> cola = new PriorityQueue<>(Math.max(1, archivos.size()));
+        for (File archivo : archivos) {
+            Corrida corrida = new Corrida(archivo);
+            if (corrida.avanzar()) {
+                cola.add(corrida);
+            } else {
+                corrida.cerrar();
+            }
+        }
+        return cola;
+    }
+
+    private static XESPluginEventRecord Siguiente(PriorityQueue<Corrida> cola) throws IOException {
+        Corrida corrida = cola.poll();
+        if (corrida == null) {
+            return null;
+        }
+        XESPluginEventRecord registro = corrida.actual;
+        if (corrida.avanzar()) {
+            cola.add(corrida);
+        } else {
+            corrida.cerrar();
+        }
+        return registro;
+    }
+
+    //Lector secuencial de una corrida, con el registro que le toca salir
+    private static class Corrida implements Comparable<Corrida> {
+        private final DataInputStream entrada;
+        private XESPluginEventRecord actual;
+
+        Corrida(File archivo) throws IOException {
+            this.entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(archivo), BUFFER_LECTURA));
+        }
+
+        boolean avanzar() throws IOException {
+            this.actual = XESPluginEventRecord.leer(this.entrada);
+            return this.actual != null;
+        }
+
+        void cerrar() {
+            try {
+                this.entrada.close();
+            } catch (IOException e) {
+                //la corrida ya se leyo completa, no hay nada que recuperar
+            }
+        }
+
+        @Override
+        public int compareTo(Corrida otra) {
+            return XESPluginEventRecord.POR_CASO_Y_MARCA.compare(this.actual, otra.actual);
+        }
+    }
+}
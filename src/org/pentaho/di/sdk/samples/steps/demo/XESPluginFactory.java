@@ -0,0 +1,94 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.factory.XFactoryNaiveImpl;
+import org.deckfour.xes.factory.XFactoryRegistry;
+import org.deckfour.xes.id.XID;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.impl.XEventImpl;
+import org.deckfour.xes.model.impl.XLogImpl;
+
+import java.net.URI;
+
+//Fabrica de OpenXES que construye logs, trazas y eventos en memoria sobre XESPluginAttributeMap.
+//Se registra en XFactoryRegistry para que quede disponible a OpenXES, pero no se marca como fabrica
+//por defecto, para no cambiar el comportamiento de otros plugins que compartan la JVM.
+
+public class XESPluginFactory extends XFactoryNaiveImpl {
+
+    private static XESPluginFactory instancia = null;
+
+    public static synchronized XESPluginFactory instance() {
+        if (instancia == null) {
+            instancia = new XESPluginFactory();
+            XFactoryRegistry.instance().register(instancia);
+        }
+        return instancia;
+    }
+
+    @Override
+    public String getName() {
+        return "XESPlugin: Compact in-memory";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Creates logs, traces and events backed by compact array-based attribute maps.";
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create("https://github.com/synyster920123/xesplugin");
+    }
+
+    @Override
+    public String getAuthor() {
+        return "XESPlugin";
+    }
+
+    @Override
+    public String getVendor() {
+        return "XESPlugin";
+    }
+
+    @Override
+    public XLog createLog() {
+        return new XLogImpl(new XESPluginAttributeMap());
+    }
+
+    @Override
+    public XLog createLog(XAttributeMap attributes) {
+        return new XLogImpl(attributes);
+    }
+
+    @Override
+    public XESPluginTrace createTrace() {
+        return new XESPluginTrace(new XESPluginAttributeMap());
+    }
+
+    @Override
+    public XESPluginTrace createTrace(XAttributeMap attributes) {
+        return new XESPluginTrace(attributes);
+    }
+
+    @Override
+    public XEvent createEvent() {
+        return new XEventImpl(new XESPluginAttributeMap());
+    }
+
+    @Override
+    public XEvent createEvent(XAttributeMap attributes) {
+        return new XEventImpl(attributes);
+    }
+
+    @Override
+    public XEvent createEvent(XID id, XAttributeMap attributes) {
+        return new XEventImpl(id, attributes);
+    }
+
+    @Override
+    public XAttributeMap createAttributeMap() {
+        return new XESPluginAttributeMap();
+    }
+}
@@ -0,0 +1,286 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+//Salida gzip por bloques independientes (al estilo de pigz): los datos se cortan en bloques fijos y cada bloque
+//se comprime como un miembro gzip completo, con su cabecera, su CRC y su tamaño. Un fichero gzip puede tener
+//varios miembros seguidos y se descomprime como uno solo (GZIPInputStream, gunzip, XesXmlGZIPParser), asi que
+//los bloques se pueden comprimir en varios hilos y escribirse en orden. El resultado no depende de la cantidad
+//de hilos; nunca hay mas de dos bloques pendientes por hilo. Se recuerda donde empieza cada miembro, para que un
+//lector pueda descomprimir solo desde el miembro que contiene lo que busca.
+//
+//Varios streams abiertos a la vez (la salida dividida por hash o por mes) pueden compartir una Compresion: un
+//solo pool de hilos, un Deflater por hilo y un mismo tope de bloques sin comprimir en espera para todos.
+
+public class XESPluginGzipOutputStream extends OutputStream {
+
+    //tamaño de cada bloque sin comprimir; bloques mas chicos comprimen peor
+    public static final int TAMANO_BLOQUE = 1 << 20;
+
+    //cabecera gzip fija: deflate, sin nombre ni fecha, sistema desconocido
+    private static final byte[] CABECERA = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    //Hilos de compresion que pueden compartir varios streams con el mismo nivel
+    public static class Compresion {
+        private final int nivel;
+        private final ExecutorService ejecutor; //null para comprimir en el hilo que escribe
+        private final ThreadLocal<Deflater> compresores;
+        private final Semaphore cupos; //bloques sin comprimir que pueden esperar a la vez, entre todos los streams
+        private final int pendientesMaximo;
+
+        /**
+         * @param nivel nivel de compresion de Deflater, de 0 a 9
+         * @param hilos hilos que comprimen bloques a la vez
+         */
+        public Compresion(final int nivel, int hilos) {
+            this.nivel = nivel;
+            this.ejecutor = hilos > 1 ? Executors.newFixedThreadPool(hilos) : null;
+            this.compresores = new ThreadLocal<Deflater>() {
+                @Override
+                protected Deflater initialValue() {
+                    return new Deflater(nivel, true);
+                }
+            };
+            this.pendientesMaximo = 2 * Math.max(1, hilos);
+            this.cupos = new Semaphore(this.pendientesMaximo);
+        }
+
+        /**
+         * Detiene los hilos; los streams que la usan ya deben estar cerrados.
+         */
+        public void cerrar() {
+            if (this.ejecutor != null) {
+                this.ejecutor.shutdownNow();
+            }
+        }
+
+        private Future<byte[]> Enviar(final byte[] datos, final int longitud) throws IOException {
+            try {
+                this.cupos.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while compressing output");
+            }
+            try {
+                return this.ejecutor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() {
+                        try {
+                            return Comprimir(datos, longitud);
+                        } finally {
+                            cupos.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.cupos.release();
+                throw new IOException("Compression threads already stopped", e);
+            }
+        }
+
+        //Un miembro gzip completo con los datos del bloque
+        private byte[] Comprimir(byte[] datos, int longitud) {
+            Deflater compresor = this.compresores.get();
+            compresor.reset();
+            compresor.setInput(datos, 0, longitud);
+            compresor.finish();
+
+            //lo comprimido casi nunca supera lo original; si pasa, el arreglo crece
+            byte[] miembro = new byte[CABECERA.length + longitud + (longitud >> 6) + 64];
+            System.arraycopy(CABECERA, 0, miembro, 0, CABECERA.length);
+            int n = CABECERA.length;
+            while (!compresor.finished()) {
+                if (n == miembro.length - 8) {
+                    miembro = Arrays.copyOf(miembro, miembro.length * 2);
+                }
+                n += compresor.deflate(miembro, n, miembro.length - 8 - n);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(datos, 0, longitud);
+            n = EnteroLE(miembro, n, (int) crc.getValue());
+            n = EnteroLE(miembro, n, longitud);
+            return n == miembro.length ? miembro : Arrays.copyOf(miembro, n);
+        }
+    }
+
+    private final OutputStream salida;
+    private final Compresion compresion;
+    private final boolean compresionPropia; //la compresion se creo con el stream y se detiene al cerrarlo
+    private final ArrayDeque<Future<byte[]>> pendientes;
+
+    private byte[] bloque;
+    private int usados;
+    private boolean cerrado;
+    private long sinComprimir; //bytes recibidos hasta el bloque actual
+    private long comprimidos; //bytes escritos en la salida
+    private final List<long[]> miembros; //inicio de cada miembro: {sin comprimir, comprimido}
+
+    /**
+     * @param salida destino de los miembros comprimidos; se cierra con este stream
+     * @param nivel  nivel de compresion de Deflater, de 0 a 9
+     * @param hilos  hilos que comprimen bloques a la vez
+     */
+    public XESPluginGzipOutputStream(OutputStream salida, int nivel, int hilos) {
+        this(salida, new Compresion(nivel, hilos), true);
+    }
+
+    /**
+     * @param salida     destino de los miembros comprimidos; se cierra con este stream
+     * @param compresion hilos de compresion compartidos; siguen activos despues de cerrar este stream
+     */
+    public XESPluginGzipOutputStream(OutputStream salida, Compresion compresion) {
+        this(salida, compresion, false);
+    }
+
+    private XESPluginGzipOutputStream(OutputStream salida, Compresion compresion, boolean compresionPropia) {
+        this.salida = salida;
+        this.compresion = compresion;
+        this.compresionPropia = compresionPropia;
+        this.pendientes = new ArrayDeque<>();
+        this.bloque = new byte[TAMANO_BLOQUE];
+        this.miembros = new ArrayList<>();
+    }
+
+    public int getNivel() {
+        return compresion.nivel;
+    }
+
+    /**
+     * @return el inicio de cada miembro escrito, como {posicion sin comprimir, posicion en el fichero}
+     */
+    public List<long[]> getMiembros() {
+        return miembros;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.usados == this.bloque.length) {
+            Enviar();
+        }
+        this.bloque[this.usados++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] datos, int desde, int longitud) throws IOException {
+        while (longitud > 0) {
+            if (this.usados == this.bloque.length) {
+                Enviar();
+            }
+            int n = Math.min(longitud, this.bloque.length - this.usados);
+            System.arraycopy(datos, desde, this.bloque, this.usados, n);
+            this.usados += n;
+            desde += n;
+            longitud -= n;
+        }
+    }
+
+    /**
+     * Termina el bloque actual aunque no este lleno y escribe todos los bloques pendientes.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.usados > 0) {
+            Enviar();
+        }
+        while (!this.pendientes.isEmpty()) {
+            EscribirSiguiente();
+        }
+        this.salida.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.cerrado) {
+            return;
+        }
+        this.cerrado = true;
+        try {
+            flush();
+        } finally {
+            if (this.compresionPropia) {
+                this.compresion.cerrar();
+            }
+            this.salida.close();
+        }
+    }
+
+    /**
+     * Cierra la salida sin comprimir el bloque actual ni esperar los que estan pendientes: el fichero queda
+     * incompleto y quien lo abrio lo descarta. Una compresion compartida sigue activa.
+     */
+    public void abortar() throws IOException {
+        if (this.cerrado) {
+            return;
+        }
+        this.cerrado = true;
+        this.pendientes.clear();
+        try {
+            if (this.compresionPropia) {
+                this.compresion.cerrar();
+            }
+        } finally {
+            this.salida.close();
+        }
+    }
+
+    private void Enviar() throws IOException {
+        byte[] datos = this.bloque;
+        int longitud = this.usados;
+        this.bloque = new byte[TAMANO_BLOQUE];
+        this.usados = 0;
+        this.miembros.add(new long[]{this.sinComprimir, -1});
+        this.sinComprimir += longitud;
+        if (this.compresion.ejecutor == null) {
+            EscribirMiembro(this.compresion.Comprimir(datos, longitud));
+            return;
+        }
+        this.pendientes.add(this.compresion.Enviar(datos, longitud));
+        //los bloques ya comprimidos no esperan a que este stream vuelva a llenar otro
+        while (!this.pendientes.isEmpty()
+                && (this.pendientes.size() > this.compresion.pendientesMaximo || this.pendientes.peek().isDone())) {
+            EscribirSiguiente();
+        }
+    }
+
+    private void EscribirSiguiente() throws IOException {
+        try {
+            EscribirMiembro(this.pendientes.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing output");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to compress output", e.getCause());
+        }
+    }
+
+    //Los miembros se escriben en el mismo orden en que se enviaron: el primero sin posicion es este
+    private void EscribirMiembro(byte[] miembro) throws IOException {
+        this.miembros.get(this.miembros.size() - 1 - this.pendientes.size())[1] = this.comprimidos;
+        this.salida.write(miembro);
+        this.comprimidos += miembro.length;
+    }
+
+    private static int EnteroLE(byte[] destino, int posicion, int valor) {
+        destino[posicion] = (byte) valor;
+        destino[posicion + 1] = (byte) (valor >>> 8);
+        destino[posicion + 2] = (byte) (valor >>> 16);
+        destino[posicion + 3] = (byte) (valor >>> 24);
+        return posicion + 4;
+    }
+}
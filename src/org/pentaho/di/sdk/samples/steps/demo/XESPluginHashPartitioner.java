@@ -0,0 +1,126 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+//Particionado por hash (grace hash) de registros de eventos: cada registro se agrega al fichero de la particion
+//que le toca segun el hash de su instancia de proceso, asi todos los eventos de un caso quedan en la misma
+//particion y en orden de llegada. Al final cada particion se puede cargar y armar por separado, por lo que
+//la memoria queda acotada por la particion mas grande y las particiones se pueden procesar en paralelo.
+
+public class XESPluginHashPartitioner implements Closeable {
+
+    public static final int PARTICIONES_DEFECTO = 64;
+
+    private static final int BUFFER_ESCRITURA = 1 << 16;
+    private static final int BUFFER_LECTURA = 1 << 18;
+
+    private final File[] archivos;
+    private DataOutputStream[] salidas;
+    private final long[] registros;
+
+    /**
+     * @param directorio  directorio para las particiones, o null para el temporal del sistema
+     * @param particiones cantidad de ficheros de particion
+     */
+    public XESPluginHashPartitioner(File directorio, int particiones) throws IOException {
+        this.archivos = new File[particiones];
+        this.salidas = new DataOutputStream[particiones];
+        this.registros = new long[particiones];
+        try {
+            for (int i = 0; i < particiones; i++) {
+                //se borran al cargar cada particion o en close(), que el paso llama tambien desde dispose
+                this.archivos[i] = File.createTempFile("xesplugin-part" + i + "-", ".bin", directorio);
+                this.salidas[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.archivos[i]), BUFFER_ESCRITURA));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getParticiones() {
+        return this.archivos.length;
+    }
+
+    public static int particion(String caso, int particiones) {
+        //se mezclan los bits altos del hash para que casos con hashes parecidos no caigan juntos
+        int h = caso.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % particiones;
+    }
+
+    public void agregar(XESPluginEventRecord registro) throws IOException {
+        int p = particion(registro.getCaso(), this.archivos.length);
+        registro.escribir(this.salidas[p]);
+        this.registros[p]++;
+    }
+
+    public long getRegistros() {
+        long total = 0;
+        for (long r : this.registros) {
+            total += r;
+        }
+        return total;
+    }
+
+    /**
+     * Termina la fase de carga y cierra los ficheros de particion.
+     */
+    public void terminar() throws IOException {
+        if (this.salidas != null) {
+            for (DataOutputStream salida : this.salidas) {
+                salida.close();
+            }
+            this.salidas = null;
+        }
+    }
+
+    /**
+     * Lee una particion completa; se puede llamar desde varios hilos, cada uno con su particion.
+     *
+     * @return los registros de la particion en orden de llegada
+     */
+    public List<XESPluginEventRecord> leer(int particion) throws IOException {
+        List<XESPluginEventRecord> lista = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, this.registros[particion]));
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(this.archivos[particion]), BUFFER_LECTURA))) {
+            XESPluginEventRecord registro;
+            while ((registro = XESPluginEventRecord.leer(entrada)) != null) {
+                lista.add(registro);
+            }
+        }
+        //una vez cargada, la particion ya no hace falta en disco
+        this.archivos[particion].delete();
+        return lista;
+    }
+
+    @Override
+    public void close() {
+        if (this.salidas != null) {
+            for (DataOutputStream salida : this.salidas) {
+                if (salida != null) {
+                    try {
+                        salida.close();
+                    } catch (IOException e) {
+                        //el fichero se borra a continuacion
+                    }
+                }
+            }
+            this.salidas = null;
+        }
+        for (File archivo : this.archivos) {
+            if (archivo != null) {
+                archivo.delete();
+            }
+        }
+    }
+}
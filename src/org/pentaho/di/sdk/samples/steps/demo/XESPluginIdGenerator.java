@@ -0,0 +1,39 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.id.XID;
+import org.deckfour.xes.id.XIDFactory;
+
+//Generador de identificadores de eventos. XEventImpl pide por defecto un XID aleatorio a XIDFactory
+//(UUID.randomUUID, que pasa por SecureRandom y esta sincronizado), aunque el identificador nunca se escriba.
+//Aqui se decide una sola vez por ejecucion como se asignan los identificadores. Cada evento recibe siempre un
+//identificador propio: XEventImpl compara y calcula el hash por el identificador, asi que un identificador
+//compartido haria iguales a todos los eventos para indexOf, contains o un HashSet.
+
+public class XESPluginIdGenerator {
+
+    //Estrategias que se pueden escoger en la vista
+    public static final String ESTRATEGIA_AUTOMATICA = "Automatic";
+    public static final String ESTRATEGIA_SECUENCIAL = "Sequential";
+    public static final String ESTRATEGIA_ALEATORIA = "Random (UUID)";
+
+    private final boolean aleatorio;
+    private final long base; //parte alta: instante de inicio de la ejecucion, distinta en cada ejecucion
+    private long contador;
+
+    /**
+     * @param estrategia estrategia escogida en la vista (null equivale a la automatica, que es secuencial)
+     */
+    public XESPluginIdGenerator(String estrategia) {
+        //solo la estrategia aleatoria paga UUID.randomUUID; las otras usan un contador, que no cuesta casi nada
+        this.aleatorio = ESTRATEGIA_ALEATORIA.equalsIgnoreCase(estrategia);
+        this.base = (System.currentTimeMillis() << 16) ^ System.nanoTime();
+        this.contador = 0;
+    }
+
+    public XID siguiente() {
+        if (this.aleatorio) {
+            return XIDFactory.instance().createId();
+        }
+        return new XID(this.base, ++this.contador);
+    }
+}
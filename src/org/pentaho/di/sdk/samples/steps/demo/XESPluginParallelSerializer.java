@@ -0,0 +1,146 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//Serializacion de trazas en paralelo: las trazas se agrupan en lotes, cada lote se convierte a bytes en un hilo
+//del pool con su propio escritor en memoria, y los fragmentos se escriben en la salida en el mismo orden en que
+//se formaron los lotes. Como cada traza se serializa con el mismo codigo, los ficheros quedan identicos a los de
+//la escritura secuencial. Con la salida dividida hay un lote en formacion por fichero, asi cada lote va entero
+//a un solo fichero. Nunca hay mas de dos lotes pendientes por hilo, lo que acota la memoria retenida.
+
+public class XESPluginParallelSerializer implements Closeable {
+
+    //eventos por lote: suficientes para que el costo de repartir el trabajo no cuente
+    public static final int EVENTOS_POR_LOTE = 4096;
+
+    //Trazas de un lote y, una vez serializadas, sus bytes
+    private static class Lote {
+        final int clave;
+        final List<XESPluginTrace> trazas = new ArrayList<>();
+        int eventos;
+        byte[] fragmento;
+        int[] finales;
+        XESPluginTraceIndex.Entrada[] entradas;
+
+        Lote(int clave) {
+            this.clave = clave;
+        }
+    }
+
+    private final XESPluginSplitWriter salida;
+    private final boolean indizar;
+    private final ExecutorService ejecutor;
+    private final ThreadLocal<XESPluginXesWriter> fragmentadores;
+    private final int pendientesMaximo;
+    private final ArrayDeque<Future<Lote>> pendientes;
+    private final Map<Integer, Lote> lotes; //lote en formacion de cada fichero
+
+    /**
+     * @param salida salida ya abierta; solo se usa desde el hilo que llama a escribir()
+     * @param hilos  hilos que serializan los lotes
+     */
+    public XESPluginParallelSerializer(final XESPluginSplitWriter salida, int hilos) {
+        this.salida = salida;
+        this.indizar = salida.isIndizado();
+        this.ejecutor = Executors.newFixedThreadPool(hilos);
+        this.fragmentadores = new ThreadLocal<XESPluginXesWriter>() {
+            @Override
+            protected XESPluginXesWriter initialValue() {
+                return salida.fragmentador();
+            }
+        };
+        this.pendientesMaximo = 2 * hilos;
+        this.pendientes = new ArrayDeque<>();
+        this.lotes = new HashMap<>();
+    }
+
+    /**
+     * Agrega la traza al lote de su fichero. La traza ya no se puede modificar: se serializa en otro hilo
+     * y despues se descargan sus eventos.
+     */
+    public void escribir(XESPluginTrace traza) throws IOException {
+        int clave = this.salida.asignar(traza);
+        Lote lote = this.lotes.get(clave);
+        if (lote == null) {
+            lote = new Lote(clave);
+            this.lotes.put(clave, lote);
+        }
+        lote.trazas.add(traza);
+        lote.eventos += traza.size();
+        if (lote.eventos >= EVENTOS_POR_LOTE) {
+            this.lotes.remove(clave);
+            Enviar(lote);
+        }
+    }
+
+    /**
+     * Serializa lo que queda pendiente y lo escribe en orden.
+     */
+    public void terminar() throws IOException {
+        for (Lote lote : new ArrayList<>(this.lotes.values())) {
+            Enviar(lote);
+        }
+        this.lotes.clear();
+        while (!this.pendientes.isEmpty()) {
+            EscribirSiguiente();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.ejecutor.shutdownNow();
+    }
+
+    private void Enviar(final Lote lote) throws IOException {
+        this.pendientes.add(this.ejecutor.submit(new Callable<Lote>() {
+            @Override
+            public Lote call() throws Exception {
+                lote.finales = new int[lote.trazas.size()];
+                lote.fragmento = fragmentadores.get().serializar(lote.trazas, lote.finales);
+                if (indizar) {
+                    //el resumen para el indice se toma antes de descargar los eventos
+                    lote.entradas = new XESPluginTraceIndex.Entrada[lote.trazas.size()];
+                    for (int i = 0; i < lote.entradas.length; i++) {
+                        lote.entradas[i] = XESPluginTraceIndex.Entrada.de(lote.trazas.get(i));
+                    }
+                }
+                //las trazas ya escritas no se vuelven a usar
+                for (XESPluginTrace traza : lote.trazas) {
+                    traza.descargar();
+                }
+                return lote;
+            }
+        }));
+        while (this.pendientes.size() > this.pendientesMaximo) {
+            EscribirSiguiente();
+        }
+    }
+
+    private void EscribirSiguiente() throws IOException {
+        Lote lote;
+        try {
+            lote = this.pendientes.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while serializing traces");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to serialize traces", e.getCause());
+        }
+        this.salida.escribirFragmento(lote.clave, lote.fragmento, lote.finales, lote.entradas, lote.trazas.size());
+    }
+}
@@ -0,0 +1,427 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.factory.XFactory;
+import org.deckfour.xes.in.XesXmlParser;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+//Salida por segmentos para anexar: cada ejecucion escribe un segmento XES nuevo (out-seg-00001.xes, out-seg-00002.xes...)
+//con los casos nuevos y, enteros, los casos que recibieron eventos; los segmentos anteriores no se tocan.
+//El manifiesto (out.xes.manifest) lista los segmentos confirmados y el indice de casos vigente, que dice en que
+//segmento esta la copia actual de cada caso. La copia de un caso en el segmento mas reciente reemplaza a las
+//anteriores, asi que quien lee el log recorre los segmentos del manifiesto y se queda con la ultima de cada caso.
+//
+//Para reescribir un caso, sus eventos anteriores se leen solo de su traza, con el indice de trazas del segmento
+//(XESPluginTraceIndex), sin recorrer los XES anteriores. El manifiesto se reemplaza de forma atomica y al final,
+//despues de cerrar el segmento y escribir el indice de casos, asi que una ejecucion que falla a medias no cambia
+//el log que se ve: el segmento a medio escribir no esta en el manifiesto y se sobrescribe en la siguiente.
+//
+//El indice de casos es un XESPluginCaseStore: durante la ejecucion se consulta el del manifiesto, sin cargarlo,
+//para clasificar cada fila y ubicar las trazas anteriores; los casos escritos se acumulan aparte y al confirmar
+//se aplican sobre una copia, que pasa a ser el indice vigente junto con el manifiesto.
+
+public class XESPluginSegmentedLog {
+
+    //Modos de escritura que se pueden escoger en la vista
+    public static final String ESCRITURA_SOBRESCRIBIR = "Overwrite the output";
+    public static final String ESCRITURA_ANEXAR = "Append a new segment";
+
+    public static final String EXTENSION_MANIFIESTO = ".manifest";
+    public static final String EXTENSION_CASOS = ".cases";
+
+    private static final int VERSION = 1;
+    private static final long SIN_MARCA = Long.MIN_VALUE;
+    private static final byte[] CIERRE_LOG = "</log>\n".getBytes(StandardCharsets.UTF_8);
+
+    //Datos de un caso escrito en el segmento nuevo, para el indice de casos
+    private static class Escrito {
+        int eventos;
+        long ultimaMarca;
+        double costo;
+    }
+
+    //Segmento confirmado, con su indice de trazas y su cabecera cargados al necesitarlos
+    private static class Segmento {
+        File archivo;
+        int trazas;
+        List<String> omitidos; //claves de los globales que no se escribieron en los eventos
+        XESPluginTraceIndex.Lectura indice;
+        byte[] cabecera;
+    }
+
+    private final String ruta;
+    private final File manifiesto;
+    private final Lector lector;
+    private final List<Segmento> segmentos;
+    private XESPluginCaseStore casos; //indice de casos del manifiesto, null si no hay segmentos
+    private final String casosAnteriores; //su nombre, se borra al confirmar
+    private final Map<String, Escrito> escritos; //casos escritos en el segmento nuevo
+    private int trazasNuevas;
+    private int trazasReescritas;
+
+    /**
+     * Carga el manifiesto y el indice de casos de la ruta, si ya existen.
+     *
+     * @param ruta    ruta de salida configurada; los segmentos y el manifiesto se nombran a partir de ella
+     * @param factory fabrica para las trazas que se leen de los segmentos
+     */
+    public XESPluginSegmentedLog(String ruta, XFactory factory) throws IOException {
+        this.ruta = ruta;
+        this.manifiesto = new File(ruta + EXTENSION_MANIFIESTO);
+        this.lector = new Lector(factory);
+        this.segmentos = new ArrayList<>();
+        this.escritos = new HashMap<>();
+        Properties propiedades = LeerManifiesto(this.manifiesto);
+        if (propiedades == null) {
+            this.casosAnteriores = null;
+            return;
+        }
+        this.segmentos.addAll(Segmentos(this.manifiesto, propiedades));
+        this.casosAnteriores = propiedades.getProperty("cases");
+        if (this.casosAnteriores != null) {
+            this.casos = new XESPluginCaseStore(new File(this.manifiesto.getAbsoluteFile().getParentFile(), this.casosAnteriores), false);
+        }
+    }
+
+    /**
+     * @return numero del segmento que escribe esta ejecucion, desde 1
+     */
+    public int getSegmentoNuevo() {
+        return this.segmentos.size() + 1;
+    }
+
+    /**
+     * @return ruta del segmento nuevo: out.xes -> out-seg-00003.xes; la extension (.xes, .xes.gz) se conserva
+     */
+    public String rutaSegmento() {
+        String sufijo = String.format("-seg-%05d", getSegmentoNuevo());
+        String minusculas = this.ruta.toLowerCase();
+        for (String extension : new String[]{".xes.gz", ".xes", ".gz"}) {
+            if (minusculas.endsWith(extension)) {
+                return this.ruta.substring(0, this.ruta.length() - extension.length()) + sufijo + this.ruta.substring(this.ruta.length() - extension.length());
+            }
+        }
+        return this.ruta + sufijo + ".xes";
+    }
+
+    /**
+     * @return cantidad de casos en los segmentos ya confirmados
+     */
+    public int getCasos() {
+        return this.casos == null ? 0 : this.casos.getCasos();
+    }
+
+    /**
+     * Clasifica una fila con el indice de casos de los segmentos ya confirmados, sin leer los XES.
+     *
+     * @param marca marca de tiempo del evento, o null si no tiene
+     * @return una de las clases de fila de XESPluginCaseStore
+     */
+    public int clasificar(String caso, Date marca) {
+        if (this.casos == null) {
+            return XESPluginCaseStore.FILA_CASO_NUEVO;
+        }
+        return this.casos.clasificar(caso, marca == null ? SIN_MARCA : marca.getTime());
+    }
+
+    /**
+     * @return la copia vigente del caso en un segmento anterior, con los globales omitidos ya restituidos,
+     * o null si el caso es nuevo
+     */
+    public XTrace anterior(String caso) throws IOException {
+        //si el caso ya se escribio en esta ejecucion, la copia anterior ya se uso
+        int ranura = this.casos == null || this.escritos.containsKey(caso) ? -1 : this.casos.buscar(caso);
+        if (ranura == -1) {
+            return null;
+        }
+        Segmento segmento = this.segmentos.get(this.casos.getSegmento(ranura) - 1);
+        if (segmento.indice == null) {
+            segmento.indice = XESPluginTraceIndex.leer(new File(segmento.archivo.getPath() + XESPluginTraceIndex.EXTENSION));
+            segmento.cabecera = segmento.indice.leerCabecera(segmento.archivo);
+        }
+        XESPluginTraceIndex.Entrada entrada = segmento.indice.buscar(caso);
+        if (entrada == null) {
+            throw new IOException("Case " + caso + " is missing from " + segmento.archivo);
+        }
+        //la traza se lee con la cabecera de su segmento, para que el parser tome sus extensiones y globales
+        byte[] traza = segmento.indice.leerTraza(segmento.archivo, entrada);
+        XLog log = this.lector.parsear(new SequenceInputStream(Collections.enumeration(Arrays.<InputStream>asList(
+                new ByteArrayInputStream(segmento.cabecera), new ByteArrayInputStream(traza), new ByteArrayInputStream(CIERRE_LOG)))),
+                segmento.archivo);
+        if (log.isEmpty()) {
+            throw new IOException("Case " + caso + " could not be read from " + segmento.archivo);
+        }
+        RestituirGlobales(log, segmento.omitidos);
+        return log.get(0);
+    }
+
+    /**
+     * Anota que la traza ya ordenada va en el segmento nuevo; se llama antes de descargar sus eventos.
+     */
+    public void registrar(XESPluginTrace traza) {
+        if (this.escritos.containsKey(traza.getCaso()) || (this.casos != null && this.casos.buscar(traza.getCaso()) != -1)) {
+            this.trazasReescritas++;
+        } else {
+            this.trazasNuevas++;
+        }
+        Date ultima = traza.getUltimaMarca();
+        Escrito escrito = new Escrito();
+        escrito.eventos = traza.size();
+        escrito.ultimaMarca = ultima == null ? SIN_MARCA : ultima.getTime();
+        escrito.costo = traza.tieneCosto() ? traza.getCostoTotal() : Double.NaN;
+        this.escritos.put(traza.getCaso(), escrito);
+    }
+
+    /**
+     * @return true si el caso ya se escribio en el segmento nuevo
+     */
+    public boolean isEscrito(String caso) {
+        return this.escritos.containsKey(caso);
+    }
+
+    public int getTrazasNuevas() {
+        return trazasNuevas;
+    }
+
+    public int getTrazasReescritas() {
+        return trazasReescritas;
+    }
+
+    /**
+     * Agrega al log el segmento ya cerrado: escribe el indice de casos y reemplaza el manifiesto.
+     * Un segmento sin trazas se borra y el log queda como estaba.
+     *
+     * @param archivo  fichero XES del segmento, con su indice de trazas
+     * @param omitidos claves de los globales de evento que se omitieron en los eventos iguales a ellos, o null
+     * @return false si el segmento no tenia trazas
+     */
+    public boolean confirmar(String archivo, List<String> omitidos) throws IOException {
+        if (this.escritos.isEmpty()) {
+            Files.deleteIfExists(new File(archivo).toPath());
+            Files.deleteIfExists(new File(archivo + XESPluginTraceIndex.EXTENSION).toPath());
+            cerrar();
+            return false;
+        }
+        File directorio = this.manifiesto.getAbsoluteFile().getParentFile();
+        String nombreCasos = new File(archivo).getName() + EXTENSION_CASOS;
+        //el indice vigente no se toca: los casos escritos se aplican sobre una copia
+        File nuevoIndice = new File(directorio, nombreCasos);
+        if (this.casos != null) {
+            this.casos.close();
+            this.casos = null;
+            Files.copy(new File(directorio, this.casosAnteriores).toPath(), nuevoIndice.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(nuevoIndice.toPath());
+        }
+        try (XESPluginCaseStore indice = new XESPluginCaseStore(nuevoIndice, true)) {
+            for (Map.Entry<String, Escrito> entrada : this.escritos.entrySet()) {
+                Escrito escrito = entrada.getValue();
+                indice.poner(entrada.getKey(), getSegmentoNuevo(), escrito.eventos, escrito.ultimaMarca, escrito.costo);
+            }
+        }
+        //todo lo que nombra el manifiesto nuevo tiene que estar en disco antes de reemplazarlo; si no, una caida
+        //puede dejar un manifiesto confirmado que apunta a un segmento truncado
+        Sincronizar(new File(archivo));
+        Sincronizar(new File(archivo + XESPluginTraceIndex.EXTENSION));
+        Sincronizar(nuevoIndice);
+
+        Segmento segmento = new Segmento();
+        segmento.archivo = new File(archivo);
+        segmento.trazas = this.trazasNuevas + this.trazasReescritas;
+        segmento.omitidos = omitidos == null ? Collections.<String>emptyList() : omitidos;
+        this.segmentos.add(segmento);
+
+        Properties propiedades = new Properties();
+        propiedades.setProperty("version", String.valueOf(VERSION));
+        propiedades.setProperty("segments", String.valueOf(this.segmentos.size()));
+        for (int s = 0; s < this.segmentos.size(); s++) {
+            String prefijo = "segment." + (s + 1) + ".";
+            propiedades.setProperty(prefijo + "file", this.segmentos.get(s).archivo.getName());
+            propiedades.setProperty(prefijo + "traces", String.valueOf(this.segmentos.get(s).trazas));
+            List<String> omitidosSegmento = this.segmentos.get(s).omitidos;
+            for (int g = 0; g < omitidosSegmento.size(); g++) {
+                propiedades.setProperty(prefijo + "omittedGlobal." + (g + 1), omitidosSegmento.get(g));
+            }
+        }
+        propiedades.setProperty("cases", nombreCasos);
+        File temporal = new File(this.manifiesto.getPath() + ".tmp");
+        try (FileOutputStream salida = new FileOutputStream(temporal)) {
+            propiedades.store(salida, "XES log segments, oldest first; the last copy of a case is the current one");
+            salida.getFD().sync();
+        }
+        Files.move(temporal.toPath(), this.manifiesto.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (this.casosAnteriores != null && !this.casosAnteriores.equals(nombreCasos)) {
+            new File(directorio, this.casosAnteriores).delete();
+        }
+        return true;
+    }
+
+    /**
+     * Lee el log completo de un manifiesto: las trazas de todos los segmentos, con la copia mas reciente de
+     * cada caso en la posicion en que el caso aparecio por primera vez. La cabecera es la del ultimo segmento.
+     */
+    public static XLog leer(File manifiesto, XFactory factory) throws IOException {
+        Properties propiedades = LeerManifiesto(manifiesto);
+        if (propiedades == null) {
+            throw new IOException(manifiesto + " does not exist");
+        }
+        Lector lector = new Lector(factory);
+        XLog cabecera = null;
+        Map<String, XTrace> trazas = new LinkedHashMap<>();
+        for (Segmento segmento : Segmentos(manifiesto, propiedades)) {
+            InputStream entrada = new BufferedInputStream(new FileInputStream(segmento.archivo), 1 << 16);
+            if (segmento.archivo.getName().toLowerCase().endsWith(".gz")) {
+                entrada = new GZIPInputStream(entrada, 1 << 16);
+            }
+            XLog log = lector.parsear(entrada, segmento.archivo);
+            RestituirGlobales(log, segmento.omitidos);
+            for (XTrace traza : log) {
+                XAttribute nombre = traza.getAttributes().get("concept:name");
+                trazas.put(nombre == null ? null : nombre.toString(), traza);
+            }
+            log.clear();
+            cabecera = log;
+        }
+        if (cabecera == null) {
+            return factory.createLog();
+        }
+        cabecera.addAll(trazas.values());
+        return cabecera;
+    }
+
+    //Parser de XES que se reutiliza: XesXmlParser.parse busca la fabrica de SAX en cada llamada, lo que pesa mas
+    //que leer una traza; aqui el parser SAX se crea una vez y cada lectura solo crea el manejador de XES
+    private static class Lector extends XesXmlParser {
+        private SAXParser parserSax;
+
+        Lector(XFactory factory) {
+            super(factory);
+        }
+
+        XLog parsear(InputStream entrada, File archivo) throws IOException {
+            try {
+                if (this.parserSax == null) {
+                    this.parserSax = SAXParserFactory.newInstance().newSAXParser();
+                } else {
+                    this.parserSax.reset();
+                }
+                XesXmlHandler manejador = new XesXmlHandler();
+                this.parserSax.parse(entrada, manejador);
+                if (manejador.getLog() == null) {
+                    throw new IOException(archivo + " does not contain an XES log");
+                }
+                return manejador.getLog();
+            } catch (SAXException | ParserConfigurationException e) {
+                throw new IOException("Unable to parse " + archivo, e);
+            } finally {
+                entrada.close();
+            }
+        }
+    }
+
+    //Vuelve a poner en cada evento los atributos que se omitieron por ser iguales a su global
+    private static void RestituirGlobales(XLog log, List<String> omitidos) {
+        if (omitidos.isEmpty()) {
+            return;
+        }
+        List<XAttribute> globales = new ArrayList<>();
+        for (XAttribute global : log.getGlobalEventAttributes()) {
+            if (omitidos.contains(global.getKey())) {
+                globales.add(global);
+            }
+        }
+        for (XTrace traza : log) {
+            for (XEvent evento : traza) {
+                XAttributeMap atributos = evento.getAttributes();
+                for (XAttribute global : globales) {
+                    if (!atributos.containsKey(global.getKey())) {
+                        atributos.put(global.getKey(), (XAttribute) global.clone());
+                    }
+                }
+            }
+        }
+    }
+
+    private static Properties LeerManifiesto(File manifiesto) throws IOException {
+        if (!manifiesto.exists()) {
+            return null;
+        }
+        Properties propiedades = new Properties();
+        try (InputStream entrada = new FileInputStream(manifiesto)) {
+            propiedades.load(entrada);
+        }
+        return propiedades;
+    }
+
+    //Baja a disco el contenido de un fichero ya cerrado
+    private static void Sincronizar(File archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo.toPath(), StandardOpenOption.WRITE)) {
+            canal.force(true);
+        }
+    }
+
+    //Segmentos del manifiesto, en orden; los nombres son relativos al directorio del manifiesto
+    private static List<Segmento> Segmentos(File manifiesto, Properties propiedades) throws IOException {
+        File directorio = manifiesto.getAbsoluteFile().getParentFile();
+        List<Segmento> segmentos = new ArrayList<>();
+        try {
+            int cantidad = Integer.parseInt(propiedades.getProperty("segments", "0"));
+            for (int s = 1; s <= cantidad; s++) {
+                String prefijo = "segment." + s + ".";
+                Segmento segmento = new Segmento();
+                segmento.archivo = new File(directorio, propiedades.getProperty(prefijo + "file"));
+                segmento.trazas = Integer.parseInt(propiedades.getProperty(prefijo + "traces", "0"));
+                segmento.omitidos = new ArrayList<>();
+                for (int g = 1; propiedades.getProperty(prefijo + "omittedGlobal." + g) != null; g++) {
+                    segmento.omitidos.add(propiedades.getProperty(prefijo + "omittedGlobal." + g));
+                }
+                segmentos.add(segmento);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException(manifiesto + " is not a valid segment manifest", e);
+        }
+        return segmentos;
+    }
+
+    /**
+     * Suelta el indice de casos; el segmento nuevo queda fuera del log si no se confirmo.
+     */
+    public void cerrar() throws IOException {
+        if (this.casos != null) {
+            this.casos.close();
+            this.casos = null;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.model.XLog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Salida del paso repartida en uno o varios ficheros XES, cada uno con la misma cabecera (extensiones, globales,
+//clasificadores y atributos del log). Sin division todo va al fichero de la ruta de salida. Por cantidad de
+//trazas o por tamaño aproximado los ficheros se van cerrando y abriendo uno detras de otro; por hash del caso
+//o por mes del primer evento cada traza va al fichero de su clave y esos ficheros quedan abiertos hasta el final.
+//
+//La clave de una traza se calcula con la traza completa (asignar); el corte por cantidad o tamaño se decide al
+//escribir, siempre entre dos trazas, con los bytes ya escritos, asi que no depende de si las trazas se
+//serializaron en paralelo o no. Con indice, cada fichero lleva ademas su indice de trazas (XESPluginTraceIndex).
+
+public class XESPluginSplitWriter {
+
+    //Divisiones que se pueden escoger en la vista
+    public static final String DIVISION_NINGUNA = "Single file";
+    public static final String DIVISION_TRAZAS = "By traces per file";
+    public static final String DIVISION_TAMANO = "By approximate size per file (MB)";
+    public static final String DIVISION_HASH = "By case id hash (number of files)";
+    public static final String DIVISION_MES = "By month of the first event";
+
+    //Limites por defecto de cada division
+    public static final int TRAZAS_DEFECTO = 100000;
+    public static final int TAMANO_MB_DEFECTO = 512;
+    public static final int FICHEROS_HASH_DEFECTO = 8;
+
+    //clave de las trazas sin ninguna marca de tiempo en la division por mes
+    private static final int SIN_FECHA = -1;
+
+    //Un fichero abierto: su escritor y, si corresponde, su compresor y su indice
+    private static class Archivo {
+        XESPluginXesWriter escritor;
+        XESPluginGzipOutputStream compresor;
+        XESPluginTraceIndex indice;
+
+        void cerrar() throws IOException {
+            try {
+                this.escritor.cerrar();
+            } finally {
+                if (this.indice != null) {
+                    this.indice.cerrar(this.compresor == null ? null : this.compresor.getMiembros());
+                }
+            }
+        }
+
+        //cierra los ficheros sin escribir el cierre del log ni el pie del indice
+        void abortar() throws IOException {
+            try {
+                if (this.compresor != null) {
+                    this.compresor.abortar();
+                }
+                this.escritor.abortar();
+            } finally {
+                if (this.indice != null) {
+                    this.indice.abortar();
+                }
+            }
+        }
+    }
+
+    private final String ruta;
+    private final XLog cabecera;
+    private final boolean indentar;
+    private final int nivelCompresion; //-1 sin compresion
+    private final int hilos;
+    private final String division;
+    private final long limite;
+    private final boolean indizar;
+    private final boolean omitirGlobales;
+
+    private final Map<Integer, Archivo> abiertos;
+    private final List<String> archivos;
+    private final Calendar calendario;
+    //un solo pool de compresion para todos los ficheros abiertos, que en la division por hash o por mes pueden ser muchos
+    private XESPluginGzipOutputStream.Compresion compresion;
+    private Archivo actual; //sin division o en las divisiones por cantidad o tamaño
+    private int trazasEscritas;
+
+    /**
+     * @param ruta            ruta de salida; con division, el nombre de cada fichero se forma a partir de ella
+     * @param nivelCompresion nivel de gzip, o -1 para escribir XML sin comprimir
+     * @param hilos           hilos para comprimir cada fichero
+     * @param division        una de las divisiones, o null para un solo fichero
+     * @param limite          trazas por fichero, MB por fichero o cantidad de ficheros, segun la division
+     * @param indizar         true para escribir el indice de trazas de cada fichero
+     * @param omitirGlobales  true para no escribir en los eventos los atributos iguales a su global
+     */
+    public XESPluginSplitWriter(String ruta, XLog cabecera, boolean indentar, int nivelCompresion, int hilos, String division, long limite,
+                                boolean indizar, boolean omitirGlobales) {
+        this.ruta = ruta;
+        this.cabecera = cabecera;
+        this.indentar = indentar;
+        this.nivelCompresion = nivelCompresion;
+        this.hilos = hilos;
+        this.division = division == null ? DIVISION_NINGUNA : division;
+        this.limite = DIVISION_TAMANO.equalsIgnoreCase(this.division) ? Math.max(1, limite) << 20 : Math.max(1, limite);
+        this.indizar = indizar;
+        this.omitirGlobales = omitirGlobales;
+        this.abiertos = new HashMap<>();
+        this.archivos = new ArrayList<>();
+        this.calendario = Calendar.getInstance();
+    }
+
+    /**
+     * Abre el primer fichero. Sin division o con division por cantidad o tamaño, el fichero se crea aunque
+     * no llegue ninguna traza.
+     */
+    public void abrir() throws IOException {
+        if (!DIVISION_HASH.equalsIgnoreCase(this.division) && !DIVISION_MES.equalsIgnoreCase(this.division)) {
+            this.actual = Abrir(0);
+        }
+    }
+
+    /**
+     * @return la clave del fichero de la traza: 0 en las divisiones que no dependen de la traza
+     */
+    public int asignar(XESPluginTrace traza) {
+        if (DIVISION_HASH.equalsIgnoreCase(this.division)) {
+            return XESPluginHashPartitioner.particion(traza.getCaso(), (int) this.limite);
+        }
+        if (DIVISION_MES.equalsIgnoreCase(this.division)) {
+            Date marca = traza.getPrimeraMarca();
+            if (marca == null) {
+                return SIN_FECHA;
+            }
+            this.calendario.setTime(marca);
+            return this.calendario.get(Calendar.YEAR) * 12 + this.calendario.get(Calendar.MONTH);
+        }
+        return 0;
+    }
+
+    /**
+     * Escritor en memoria con las mismas opciones, para serializar trazas en otro hilo.
+     */
+    public XESPluginXesWriter fragmentador() {
+        return Escritor().fragmentador();
+    }
+
+    public boolean isIndizado() {
+        return indizar;
+    }
+
+    public void escribirTraza(XESPluginTrace traza) throws IOException {
+        Archivo archivo = Destino(asignar(traza));
+        long inicio = archivo.escritor.getBytesEscritos();
+        XESPluginTraceIndex.Entrada entrada = archivo.indice == null ? null : XESPluginTraceIndex.Entrada.de(traza);
+        archivo.escritor.escribirTraza(traza);
+        if (entrada != null) {
+            entrada.ubicar(inicio, archivo.escritor.getBytesEscritos() - inicio);
+            archivo.indice.agregar(entrada);
+        }
+        this.trazasEscritas++;
+    }
+
+    /**
+     * Escribe trazas ya serializadas que van todas al fichero de la clave.
+     *
+     * @param finales  posicion en la que termina cada traza dentro del fragmento
+     * @param entradas resumen de cada traza para el indice, o null sin indice
+     */
+    public void escribirFragmento(int clave, byte[] fragmento, int[] finales, XESPluginTraceIndex.Entrada[] entradas, int trazas) throws IOException {
+        int desde = 0;
+        int i = 0;
+        while (i < trazas) {
+            Archivo archivo = Destino(clave);
+            XESPluginXesWriter destino = archivo.escritor;
+            //se escriben juntas todas las trazas que caben antes del siguiente corte
+            int j = i + 1;
+            if (this.actual != null && !DIVISION_NINGUNA.equalsIgnoreCase(this.division)) {
+                long trazasDestino = destino.getTrazasEscritas() + 1;
+                long bytesDestino = destino.getBytesEscritos() + finales[i] - desde;
+                while (j < trazas && !Lleno(trazasDestino, bytesDestino)) {
+                    trazasDestino++;
+                    bytesDestino += finales[j] - finales[j - 1];
+                    j++;
+                }
+            } else {
+                j = trazas;
+            }
+            if (archivo.indice != null) {
+                long base = destino.getBytesEscritos() - desde;
+                for (int k = i; k < j; k++) {
+                    int inicio = k == 0 ? 0 : finales[k - 1];
+                    entradas[k].ubicar(base + inicio, finales[k] - inicio);
+                    archivo.indice.agregar(entradas[k]);
+                }
+            }
+            destino.escribirFragmento(fragmento, desde, finales[j - 1], j - i);
+            this.trazasEscritas += j - i;
+            desde = finales[j - 1];
+            i = j;
+        }
+    }
+
+    public int getTrazasEscritas() {
+        return trazasEscritas;
+    }
+
+    /**
+     * @return rutas de los ficheros escritos, en el orden en que se abrieron
+     */
+    public List<String> getArchivos() {
+        return archivos;
+    }
+
+    /**
+     * Cierra todos los ficheros abiertos y detiene los hilos de compresion.
+     */
+    public void cerrar() throws IOException {
+        IOException error = null;
+        for (Archivo archivo : this.abiertos.values()) {
+            try {
+                archivo.cerrar();
+            } catch (IOException e) {
+                error = error == null ? e : error;
+            }
+        }
+        this.abiertos.clear();
+        this.actual = null;
+        if (this.compresion != null) {
+            this.compresion.cerrar();
+            this.compresion = null;
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Descarta la salida cuando la escritura no termino: cierra los ficheros abiertos sin escribir el cierre del
+     * log ni los indices, detiene los hilos de compresion y borra todos los ficheros escritos con sus indices,
+     * tambien los que ya estaban cerrados.
+     */
+    public void abortar() throws IOException {
+        IOException error = null;
+        for (Archivo archivo : this.abiertos.values()) {
+            try {
+                archivo.abortar();
+            } catch (IOException e) {
+                error = error == null ? e : error;
+            }
+        }
+        this.abiertos.clear();
+        this.actual = null;
+        if (this.compresion != null) {
+            this.compresion.cerrar();
+            this.compresion = null;
+        }
+        for (String nombre : this.archivos) {
+            for (File archivo : new File[]{new File(nombre), new File(nombre + XESPluginTraceIndex.EXTENSION)}) {
+                if (archivo.exists() && !archivo.delete() && error == null) {
+                    error = new IOException("Unable to delete " + archivo);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    //Fichero donde se escribe la siguiente traza de la clave; en las divisiones por cantidad o tamaño,
+    //si el fichero actual llego al limite se cierra y se abre el siguiente
+    private Archivo Destino(int clave) throws IOException {
+        if (this.actual != null) {
+            XESPluginXesWriter escritor = this.actual.escritor;
+            if (!DIVISION_NINGUNA.equalsIgnoreCase(this.division) && escritor.getTrazasEscritas() > 0
+                    && Lleno(escritor.getTrazasEscritas(), escritor.getBytesEscritos())) {
+                this.abiertos.remove(this.archivos.size() - 1);
+                this.actual.cerrar();
+                this.actual = Abrir(this.archivos.size());
+            }
+            return this.actual;
+        }
+        Archivo archivo = this.abiertos.get(clave);
+        if (archivo == null) {
+            archivo = Abrir(clave);
+        }
+        return archivo;
+    }
+
+    private boolean Lleno(long trazas, long bytes) {
+        if (DIVISION_TRAZAS.equalsIgnoreCase(this.division)) {
+            return trazas >= this.limite;
+        }
+        return DIVISION_TAMANO.equalsIgnoreCase(this.division) && bytes >= this.limite;
+    }
+
+    private Archivo Abrir(int clave) throws IOException {
+        String nombre = NombreArchivo(clave);
+        Archivo archivo = new Archivo();
+        OutputStream salida = new FileOutputStream(nombre);
+        if (this.nivelCompresion >= 0) {
+            if (this.compresion == null) {
+                this.compresion = new XESPluginGzipOutputStream.Compresion(this.nivelCompresion, this.hilos);
+            }
+            archivo.compresor = new XESPluginGzipOutputStream(salida, this.compresion);
+            salida = archivo.compresor;
+        }
+        if (this.indizar) {
+            archivo.indice = new XESPluginTraceIndex(new File(nombre + XESPluginTraceIndex.EXTENSION));
+        }
+        archivo.escritor = Escritor();
+        archivo.escritor.abrir(this.cabecera, salida);
+        this.abiertos.put(clave, archivo);
+        this.archivos.add(nombre);
+        return archivo;
+    }
+
+    private XESPluginXesWriter Escritor() {
+        XESPluginXesWriter escritor = new XESPluginXesWriter(this.indentar);
+        if (this.omitirGlobales) {
+            escritor.omitirGlobales(this.cabecera.getGlobalEventAttributes());
+        }
+        return escritor;
+    }
+
+    //out.xes -> out-00001.xes, out-003.xes, out-2020-01.xes; la extension (.xes, .xes.gz) se conserva
+    //y si se comprime sin que la ruta termine en .gz, se le agrega
+    private String NombreArchivo(int clave) {
+        String comprimido = this.nivelCompresion >= 0 && !this.ruta.toLowerCase().endsWith(".gz") ? ".gz" : "";
+        if (DIVISION_NINGUNA.equalsIgnoreCase(this.division)) {
+            return this.ruta + comprimido;
+        }
+        String base = this.ruta;
+        String extension = "";
+        String minusculas = this.ruta.toLowerCase();
+        for (String candidata : new String[]{".xes.gz", ".xes", ".gz"}) {
+            if (minusculas.endsWith(candidata)) {
+                base = this.ruta.substring(0, this.ruta.length() - candidata.length());
+                extension = this.ruta.substring(this.ruta.length() - candidata.length());
+                break;
+            }
+        }
+        String sufijo;
+        if (DIVISION_HASH.equalsIgnoreCase(this.division)) {
+            sufijo = String.format("%03d", clave);
+        } else if (DIVISION_MES.equalsIgnoreCase(this.division)) {
+            sufijo = clave == SIN_FECHA ? "undated" : String.format("%04d-%02d", clave / 12, clave % 12 + 1);
+        } else {
+            sufijo = String.format("%05d", clave + 1);
+        }
+        return base + "-" + sufijo + extension + comprimido;
+    }
+}
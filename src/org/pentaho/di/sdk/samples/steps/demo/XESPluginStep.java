@@ -32,12 +32,10 @@ import org.deckfour.xes.id.XID;
 import org.deckfour.xes.info.XGlobalAttributeNameMap;
 import org.deckfour.xes.info.impl.XAttributeNameMapImpl;
 import org.deckfour.xes.model.*;
-import org.deckfour.xes.model.buffered.XAttributeMapSerializerImpl;
-import org.deckfour.xes.model.buffered.XTraceBufferedImpl;
 import org.deckfour.xes.model.impl.*;
-import org.deckfour.xes.out.XesXmlSerializer;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
@@ -47,10 +45,16 @@ import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 
-import java.io.FileOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class XESPluginStep extends BaseStep implements StepInterface {
@@ -58,17 +62,14 @@ public class XESPluginStep extends BaseStep implements StepInterface {
     private static Class<?> PKG = XESPluginStepMeta.class; // for i18n purposes
 
     //global attributes
-    private XLogImpl log;
+    private XLog log;
+    private XESPluginFactory factory; //eventos y trazas sobre mapas de atributos compactos
     private XExtensionManager xExtensionManager;
     private Map<String, String> mapa_columnas;
-    private LinkedList<XTraceBufferedImpl> lista_traces;
-    private Map<String, String> mapa_IPRegistradas;
+    private XESPluginCaseIndex<XESPluginTrace> indice_casos; //instancia de proceso -> traza
     private XAttributeMapImpl mapaGlobalAtributos;
     private Map<String, Boolean> mapaUsoAtributos;
     private Map<String, XID> mapaID;
-    private Map<XTraceBufferedImpl, Float> mapa_CostTotalTrace;
-    private Map<XTraceBufferedImpl, String> mapa_ConceptNameTrace;
-    private Map<XTraceBufferedImpl, XAttributeMapImpl> mapa_Atributos_de_trazas;// Mapa para guardar los nuevos atributos por traza
     private int rowCount;
     private Map<Integer, XESPluginField> mapa_newatr; //Mapa de nuevos atributos
 
@@ -109,18 +110,14 @@ public class XESPluginStep extends BaseStep implements StepInterface {
         XESPluginStepData data = (XESPluginStepData) sdi;
 
         //my initializations
-        XAttributeMapImpl atb_map = new XAttributeMapImpl();
-        this.log = new XLogImpl(atb_map);
+        this.factory = XESPluginFactory.instance();
+        this.log = this.factory.createLog();
         this.xExtensionManager = XExtensionManager.instance();
-        this.lista_traces = new LinkedList<>();
+        this.indice_casos = new XESPluginCaseIndex<>();
         this.mapa_columnas = new HashMap<>();
-        this.mapa_IPRegistradas = new HashMap<>();
         this.mapaGlobalAtributos = new XAttributeMapImpl();
         this.mapaUsoAtributos = new HashMap<>();
         this.mapaID = new HashMap<>();
-        this.mapa_CostTotalTrace = new HashMap<>();
-        this.mapa_ConceptNameTrace = new HashMap<>();
-        this.mapa_Atributos_de_trazas = new HashMap<>();
         this.rowCount = 0;
         this.mapa_newatr = new HashMap<>();
 
@@ -179,45 +176,107 @@ public class XESPluginStep extends BaseStep implements StepInterface {
 
             setOutputDone();
 
-            //revisando que atributos se han usado, para globales y extensiones
-            UsoAtributos(meta);
-
-            //asignar a cada trace su costo total
-            for (XTraceBufferedImpl xtrace : this.lista_traces) {
-                XAttributeMapImpl xmapa = new XAttributeMapImpl();
-                XAttributeMapImpl xmap;
-
-                //para no obligar a q cada trace tenga un costo, porq la extension puede no usarse
-                if (this.mapaUsoAtributos.get("totaltrace") != null) {
-                    xmapa.put("totaltracekey", new XAttributeContinuousImpl("cost:total", this.mapa_CostTotalTrace.get(xtrace)));
-                }
-                xmapa.put("conceptnametrace", new XAttributeLiteralImpl("concept:name", this.mapa_ConceptNameTrace.get(xtrace)));
-
-                /// /añadiendo el mapa de nuevos atributos de tipo case a la traza
-                xmap = this.mapa_Atributos_de_trazas.get(xtrace);
-                xmapa.putAll(xmap);
-                xtrace.setAttributes(xmapa);
-            }
-
-            //se serializa una vez que se han convertido todos los datos
-            XesXmlSerializer serializer = new XesXmlSerializer();
             try {
-                this.log.addAll(this.lista_traces);
+                if (data.ordenador != null) {
+                    //los eventos estan en corridas ordenadas por caso: se fusionan y cada traza se escribe al completarse
+                    if (data.ordenador.getRegistros() > 0) {
+                        this.log.getExtensions().add(xExtensionManager.getByPrefix("concept"));
+                    }
+                    AbrirSalida(meta, data);
+                    EmitirOrdenados(data);
+                } else if (data.particiones != null) {
+                    //cada particion tiene todos los eventos de sus casos: se arman y se escriben particion por particion
+                    if (data.particiones.getRegistros() > 0) {
+                        this.log.getExtensions().add(xExtensionManager.getByPrefix("concept"));
+                    }
+                    AbrirSalida(meta, data);
+                    EmitirParticiones(data);
+                } else if (data.almacen != null) {
+                    //los eventos estan en el almacen: cada traza se arma siguiendo su cadena, en el orden de aparicion de los casos
+                    if (data.cadenas.size() > 0) {
+                        this.log.getExtensions().add(xExtensionManager.getByPrefix("concept"));
+                    }
+                    AbrirSalida(meta, data);
+                    EmitirAlmacen(data);
+                } else if (!data.entradaOrdenada) {
+                    //todas las trazas estan en memoria: la cabecera ya se puede construir con lo que se ha usado
+                    if (this.indice_casos.size() > 0) {
+                        //adicionando la extension por instancia de procesos utilizada al log.
+                        this.log.getExtensions().add(xExtensionManager.getByPrefix("concept"));
+                    }
+                    AbrirSalida(meta, data);
 
-                XAttributeMapImpl xmapaAtributosLog = new XAttributeMapImpl();
-                xmapaAtributosLog.put("conceptnametrace", new XAttributeLiteralImpl("concept:name", this.getStepname()));
-                this.log.setAttributes(xmapaAtributosLog);
+                    //cada traza se ordena una sola vez por marca de tiempo, las trazas son independientes entre si
+                    this.indice_casos.getTrazas().parallelStream().forEach(XESPluginTrace::ordenar);
 
-                //trabajando con las rutas de salida
-                String ruta = this.mapa_columnas.get("RutaSalida");
-                if (ruta == null || ruta.equalsIgnoreCase("")) {
-                    serializer.serialize(this.log, new FileOutputStream("output.xes"));
-                } else {
-                    serializer.serialize(this.log, new FileOutputStream(ruta));
-                }
+                    if (data.trazasDesalojadas > 0) {
+                        logBasic("Memory limit: " + data.trazasDesalojadas + " trace evictions to disk");
+                    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
+                    //se serializa una vez que se han convertido todos los datos
+                    for (XESPluginTrace xtrace : this.indice_casos.getTrazas()) {
+                        if (xtrace.getDesalojados() != null) {
+                            //los eventos desalojados se recargan solo para escribir la traza y se sueltan despues
+                            Recargar(data, xtrace);
+                            EmitirTraza(data, xtrace);
+                            if (data.serializador == null) {
+                                //en paralelo la traza se descarga despues de serializarla
+                                xtrace.descargar();
+                            }
+                        } else {
+                            EmitirTraza(data, xtrace);
+                        }
+                    }
+                } else if (data.trazaActual != null) {
+                    //entrada ordenada: solo queda pendiente la ultima traza
+                    EmitirTraza(data, data.trazaActual);
+                    data.trazaActual = null;
+                }
+                if (data.serializador != null) {
+                    data.serializador.terminar();
+                    data.serializador.close();
+                    data.serializador = null;
+                }
+                if (data.escritor != null) {
+                    data.escritor.cerrar();
+                    if (data.escritor.getArchivos().size() > 1) {
+                        logBasic("Output split into " + data.escritor.getArchivos().size() + " files");
+                    }
+                }
+                if (data.anexo != null) {
+                    logBasic("Append: " + data.filasPorClase[XESPluginCaseStore.FILA_CASO_NUEVO] + " rows of new cases, "
+                            + (data.filasPorClase[XESPluginCaseStore.FILA_CASO_EXISTENTE] + data.filasPorClase[XESPluginCaseStore.FILA_POSIBLE_DUPLICADA])
+                            + " rows of existing cases (" + data.filasPorClase[XESPluginCaseStore.FILA_POSIBLE_DUPLICADA]
+                            + " not after the last exported event), " + data.eventosExportados + " already exported events skipped");
+                    //el segmento ya esta cerrado: recien ahora pasa a formar parte del log
+                    int segmento = data.anexo.getSegmentoNuevo();
+                    boolean confirmado;
+                    try {
+                        confirmado = data.anexo.confirmar(data.escritor.getArchivos().get(0), data.omitirGlobales ? GlobalesOmitidos(data) : null);
+                    } catch (IOException e) {
+                        throw new KettleException("Unable to append segment " + segmento + ", the log is unchanged", e);
+                    }
+                    if (confirmado) {
+                        logBasic("Appended segment " + segmento + ": " + data.anexo.getTrazasNuevas() + " new traces, "
+                                + data.anexo.getTrazasReescritas() + " rewritten traces");
+                    } else {
+                        logBasic("Nothing new to append, the log is unchanged");
+                    }
+                    data.anexo = null;
+                }
+                //la salida ya esta completa: dispose no la descarta
+                data.escritor = null;
+                if (data.columnar != null) {
+                    data.columnar.close();
+                    data.columnar = null;
+                }
+                if (data.tabla != null) {
+                    logBasic("Event table: " + data.tabla.getFilasEscritas() + " rows");
+                    data.tabla.close();
+                    data.tabla = null;
+                }
+            } catch (IOException e) {
+                throw new KettleException("Unable to write the XES output", e);
             }
 
             return false;
@@ -230,124 +289,215 @@ public class XESPluginStep extends BaseStep implements StepInterface {
             first = false;
             // clone the input row structure and place it in our data object
             data.outputRowMeta = (RowMetaInterface) getInputRowMeta().clone();
+
+            //Asignandole a mapa_columnas el valor q viene desde la vista:
+            this.mapa_columnas = meta.getMapa_vista();
+            //Para trabajar los nuevos atributos
+            this.mapa_newatr = meta.getNewatr();
+            //se resuelve una sola vez el rol de cada columna
+            ConstruirPlanFilas(data);
+            //los formatos de fecha se compilan una sola vez
+            String regexMarcaTiempo = this.mapa_columnas.get("RegexMarcaTiempo");
+            data.formatoMarcaTiempo = regexMarcaTiempo == null ? null : new XESPluginTimestampParser(regexMarcaTiempo);
+            data.formatoFechaAtributos = new XESPluginTimestampParser("yyyy-MM-dd hh:mm:ss");
+            //cada evento recibe un identificador propio, secuencial salvo que se pidan UUID
+            data.generadorIds = new XESPluginIdGenerator(this.mapa_columnas.get("EstrategiaID"));
+            //los atributos que se repiten mucho se comparten entre eventos
+            data.diccionarios = new XESPluginValueDictionary[XESPluginStepData.ROL_TRACE_TOTAL + 1];
+            data.diccionarios[XESPluginStepData.ROL_ACTIVIDAD] = new XESPluginValueDictionary("concept:name", xExtensionManager.getByPrefix("concept"));
+            data.diccionarios[XESPluginStepData.ROL_CICLO_VIDA] = new XESPluginValueDictionary("lifecycle:transition", xExtensionManager.getByPrefix("lifecycle"));
+            data.diccionarios[XESPluginStepData.ROL_RECURSO] = new XESPluginValueDictionary("org:resource", xExtensionManager.getByPrefix("org"));
+            data.diccionarios[XESPluginStepData.ROL_ROL] = new XESPluginValueDictionary("org:role", xExtensionManager.getByPrefix("org"));
+            data.diccionarios[XESPluginStepData.ROL_GRUPO] = new XESPluginValueDictionary("org:group", xExtensionManager.getByPrefix("org"));
+            data.diccionarios[XESPluginStepData.ROL_MONEDA] = new XESPluginValueDictionary("cost:currency", xExtensionManager.getByPrefix("cost"));
+
+            //con la entrada ordenada por caso, la cabecera se escribe al inicio y cada traza se emite al terminar su caso
+            data.entradaOrdenada = XESPluginStepMeta.MODO_ENTRADA_ORDENADA.equalsIgnoreCase(this.mapa_columnas.get("ModoEntrada"));
+            //sin globales repetidos en los eventos; si la cabecera se escribe al final, los valores por defecto son los mas frecuentes
+            data.omitirGlobales = XESPluginStepMeta.OMITIR_GLOBALES_SI.equalsIgnoreCase(this.mapa_columnas.get("OmitirGlobales"));
+            if (data.omitirGlobales && !data.entradaOrdenada) {
+                data.usosNivel = new HashMap<>();
+            }
+            //al anexar, cada fila se clasifica con el indice de casos de las ejecuciones anteriores
+            if (ModoAnexar()) {
+                try {
+                    data.anexo = new XESPluginSegmentedLog(RutaSalida(), this.factory);
+                } catch (IOException e) {
+                    throw new KettleException("Unable to open the case index", e);
+                }
+                data.filasPorClase = new long[3];
+            }
+            if (data.entradaOrdenada) {
+                UsoAtributosPlan(data);
+                //al anexar, los casos ya escritos los lleva el log segmentado
+                if (data.anexo == null) {
+                    data.casosTerminados = new HashSet<>();
+                }
+                try {
+                    AbrirSalida(meta, data);
+                } catch (IOException e) {
+                    throw new KettleException("Unable to open XES output", e);
+                }
+            } else if (XESPluginStepMeta.MODO_ENTRADA_ORDENAMIENTO_EXTERNO.equalsIgnoreCase(this.mapa_columnas.get("ModoEntrada"))) {
+                data.ordenador = new XESPluginExternalSorter(DirectorioTemporal(), LimiteMemoria());
+            } else if (XESPluginStepMeta.MODO_ENTRADA_PARTICIONES.equalsIgnoreCase(this.mapa_columnas.get("ModoEntrada"))) {
+                try {
+                    data.particiones = new XESPluginHashPartitioner(DirectorioTemporal(),
+                            EnteroOpcion("Particiones", XESPluginHashPartitioner.PARTICIONES_DEFECTO));
+                } catch (IOException e) {
+                    throw new KettleException("Unable to create partition files", e);
+                }
+            } else if (XESPluginStepMeta.MODO_ENTRADA_ALMACEN.equalsIgnoreCase(this.mapa_columnas.get("ModoEntrada"))) {
+                try {
+                    data.almacen = new XESPluginEventStore(DirectorioTemporal());
+                } catch (IOException e) {
+                    throw new KettleException("Unable to create the event store", e);
+                }
+                data.cadenas = new XESPluginCaseIndex<>();
+            } else if (!data.entradaOrdenada && this.mapa_columnas.get("LimiteMemoriaMB") != null) {
+                //en memoria con limite: las trazas menos actualizadas se desalojan a disco al superarlo
+                data.limiteMemoria = LimiteMemoria();
+                data.recientes = new LinkedHashMap<>(16, 0.75f, true);
+            }
         }
 
         // XES coding starting here
-        String nombresColumnas[] = data.outputRowMeta.getFieldNames();
+        int roles[] = data.roles;
 
         //Evento
-        Map<String, XAttribute> map = new XAttributeMapImpl();
-        XEventImpl event = new XEventImpl(new XAttributeMapImpl());
+        //el mapa se crea con la capacidad justa para los atributos que define el plan de filas
+        XAttributeMap map = new XESPluginAttributeMap(data.atributosPorEvento);
+        XEvent event = this.factory.createEvent(data.generadorIds.siguiente(), map);
 
         //Inicializando variables que podrian venir desde la vista
         String valorIP = "";
-        String valor_marcatiempo = "";
         String valor_actividad = "";
         String valor_cicloVida = "";
         String valor_actividad_instance = "";
         String valor_recurso = "";
         String valor_rol = "";
         String valor_grupo = "";
-        String valor_level = "";
         String valor_parentID = "";
         String valor_ID = "";
         String valor_Moneda = "";
-        String valor_TotalTrace = "";
-        String valor_TotalEvent = "";
-        String valor_newarib = "";
-
+        Double valor_TotalTrace = null;
+        Date marcaEvento = null; //para saber si la traza sigue ordenada
 
-        //Asignandole a mapa_columnas el valor q viene desde la vista:
-        this.mapa_columnas = meta.getMapa_vista();
-        //Para trabajar los nuevos atributos
-        this.mapa_newatr = meta.getNewatr();
-        //Mapa de nuevos atributos de tipo case
-        XAttributeMapImpl xmap = new XAttributeMapImpl();
+        //Mapa de nuevos atributos de tipo case, solo se crea si la fila trae alguno
+        XAttributeMap xmap = null;
 
-        for (int i = 0; i < nombresColumnas.length; i++) {
-            //en dependencia del dato q sea adicionarlo al map como el tipo de atributo q es
-            if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("InstanciaProceso"))) {
-                valorIP = DescifrarPalabra(r[i]);
+        for (int i = 0; i < roles.length; i++) {
+            //en dependencia del rol de la columna adicionarlo al map como el tipo de atributo q es
+            switch (roles[i]) {
+            case XESPluginStepData.ROL_INSTANCIA_PROCESO:
+                valorIP = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
                 //no puede existir un valor de IP vacio
-                if (valorIP.isEmpty() || valorIP.equals("null")) {
+                if (XESPluginValueReader.esVacio(valorIP)) {
                     throw new KettleException(BaseMessages.getString(PKG, "XESPlugin.Exceptions.ProcessInstanceNotFound") + " SOURCELINE: " + this.rowCount);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("MarcaTiempo"))) {
-                valor_marcatiempo = DescifrarPalabra(r[i]);
+                break;
+            case XESPluginStepData.ROL_MARCA_TIEMPO:
                 this.mapaUsoAtributos.put("timestamp", true);
-                if (valor_marcatiempo.isEmpty() || valor_marcatiempo.equals("null")) {
-                    //Valor por defecto en caso de que el timestamp sea nulo en algun momento
-                    XExtension extension = xExtensionManager.getByPrefix("time");
-                    map.put("time:timestamp", new XAttributeTimestampImpl("time:timestamp", new Date(), extension));
+                ValueMetaInterface metaMarcaTiempo = data.metaColumnas[i];
+                Date fecha_marcatiempo = null;
+                if (metaMarcaTiempo.isDate()) {
+                    //la columna ya trae una fecha, no hace falta interpretar ningun texto
+                    fecha_marcatiempo = XESPluginValueReader.getDate(metaMarcaTiempo, r[i]);
+                } else if (metaMarcaTiempo.isNumeric() && data.formatoMarcaTiempo != null && data.formatoMarcaTiempo.esEpoch()) {
+                    Long epoch = XESPluginValueReader.getInteger(metaMarcaTiempo, r[i]);
+                    if (epoch != null) {
+                        fecha_marcatiempo = data.formatoMarcaTiempo.desdeEpoch(epoch);
+                    }
                 } else {
-                    try {
-                        //Lanza Excepcion que se queda como log en la consola de PentahoDI
-                        Date date = new SimpleDateFormat(this.mapa_columnas.get("RegexMarcaTiempo")).parse(valor_marcatiempo);
-                        XExtension extension = xExtensionManager.getByPrefix("time");
-                        map.put("time:timestamp", new XAttributeTimestampImpl("time:timestamp", date, extension));
-                    } catch (ParseException e) {
-                        throw new KettleException(BaseMessages.getString(PKG, "XESPlugin.Exceptions.DateFormat") + " SOURCELINE: " + this.rowCount);
+                    String valor_marcatiempo = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                    if (!XESPluginValueReader.esVacio(valor_marcatiempo)) {
+                        try {
+                            //Lanza Excepcion que se queda como log en la consola de PentahoDI
+                            if (data.formatoMarcaTiempo == null) {
+                                throw new ParseException(valor_marcatiempo, 0);
+                            }
+                            fecha_marcatiempo = data.formatoMarcaTiempo.parse(valor_marcatiempo);
+                        } catch (ParseException e) {
+                            throw new KettleException(BaseMessages.getString(PKG, "XESPlugin.Exceptions.DateFormat") + " SOURCELINE: " + this.rowCount);
+                        }
                     }
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("Actividad"))) {
-                valor_actividad = DescifrarPalabra(r[i]);
-                if (!valor_actividad.isEmpty() && !valor_actividad.equals("null")) {
-                    XExtension extension = xExtensionManager.getByPrefix("concept");
-                    map.put("concept:name", new XAttributeLiteralImpl("concept:name", valor_actividad, extension));
+                if (fecha_marcatiempo == null) {
+                    //Valor por defecto en caso de que el timestamp sea nulo en algun momento
+                    fecha_marcatiempo = new Date();
+                }
+                map.put("time:timestamp", new XAttributeTimestampImpl("time:timestamp", fecha_marcatiempo, xExtensionManager.getByPrefix("time")));
+                marcaEvento = fecha_marcatiempo;
+                break;
+            case XESPluginStepData.ROL_ACTIVIDAD:
+                valor_actividad = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_actividad)) {
+                    map.put("concept:name", data.diccionarios[XESPluginStepData.ROL_ACTIVIDAD].obtener(valor_actividad));
                     this.mapaUsoAtributos.put("concept", true);
                 } else {
                     throw new KettleException(BaseMessages.getString(PKG, "XESPlugin.Exceptions.ActivityNotFound") + " SOURCELINE: " + this.rowCount);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("CicloVida"))) {
-                valor_cicloVida = DescifrarPalabra(r[i]);
-                if (!valor_cicloVida.isEmpty() && !valor_cicloVida.equals("null")) {
-                    XExtension extension = xExtensionManager.getByPrefix("lifecycle");
-                    map.put("lifecycle:transition", new XAttributeLiteralImpl("lifecycle:transition", valor_cicloVida, extension));
+                break;
+            case XESPluginStepData.ROL_CICLO_VIDA:
+                valor_cicloVida = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_cicloVida)) {
+                    map.put("lifecycle:transition", data.diccionarios[XESPluginStepData.ROL_CICLO_VIDA].obtener(valor_cicloVida));
                     this.mapaUsoAtributos.put("lifecycle", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("Activity_instans"))) {
+                break;
+            case XESPluginStepData.ROL_ACTIVITY_INSTANS:
                 //Revizar OPENXES para manejar esto
-                valor_actividad_instance = DescifrarPalabra(r[i]);
-                if (!valor_actividad_instance.isEmpty() && !valor_actividad_instance.equals("null")) {
+                valor_actividad_instance = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_actividad_instance)) {
                     XExtension extension = xExtensionManager.getByPrefix("concept");
                     map.put("concept:instance", new XAttributeLiteralImpl("concept:instance", valor_actividad_instance, extension));
                 } else {
                     throw new KettleException(BaseMessages.getString(PKG, "XESPlugin.Exceptions.ActivityNotFound") + " SOURCELINE: " + this.rowCount);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("Recurso"))) {
-                valor_recurso = DescifrarPalabra(r[i]);
-                if (!valor_recurso.isEmpty() && !valor_recurso.equals("null")) {
-                    XExtension extension = xExtensionManager.getByPrefix("org");
-                    map.put("org:resource", new XAttributeLiteralImpl("org:resource", valor_recurso, extension));
+                break;
+            case XESPluginStepData.ROL_RECURSO:
+                valor_recurso = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_recurso)) {
+                    map.put("org:resource", data.diccionarios[XESPluginStepData.ROL_RECURSO].obtener(valor_recurso));
                     this.mapaUsoAtributos.put("resource", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("Rol"))) {
-                valor_rol = DescifrarPalabra(r[i]);
-                if (!valor_rol.isEmpty() && !valor_rol.equals("null")) {
-                    XExtension extension = xExtensionManager.getByPrefix("org");
-                    map.put("org:role", new XAttributeLiteralImpl("org:role", valor_rol, extension));
+                break;
+            case XESPluginStepData.ROL_ROL:
+                valor_rol = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_rol)) {
+                    map.put("org:role", data.diccionarios[XESPluginStepData.ROL_ROL].obtener(valor_rol));
                     this.mapaUsoAtributos.put("role", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("Grupo"))) {
-                valor_grupo = DescifrarPalabra(r[i]);
-                if (!valor_grupo.isEmpty() && !valor_grupo.equals("null")) {
-                    XExtension extension = xExtensionManager.getByPrefix("org");
-                    map.put("org:group", new XAttributeLiteralImpl("org:group", valor_grupo, extension));
+                break;
+            case XESPluginStepData.ROL_GRUPO:
+                valor_grupo = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_grupo)) {
+                    map.put("org:group", data.diccionarios[XESPluginStepData.ROL_GRUPO].obtener(valor_grupo));
                     this.mapaUsoAtributos.put("group", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("Nivel"))) {
-                valor_level = DescifrarPalabra(r[i]);
-                if (!valor_level.isEmpty() && !valor_level.equals("null")) {
+                break;
+            case XESPluginStepData.ROL_NIVEL:
+                Long valor_level = XESPluginValueReader.getInteger(data.metaColumnas[i], r[i]);
+                if (valor_level != null) {
                     XExtension extension = xExtensionManager.getByPrefix("micro");
-                    map.put("micro:level", new XAttributeDiscreteImpl("micro:level", Integer.parseInt(valor_level), extension));
+                    map.put("micro:level", new XAttributeDiscreteImpl("micro:level", valor_level, extension));
                     this.mapaUsoAtributos.put("level", true);
                 } else {
                     map.put("micro:level", new XAttributeDiscreteImpl("micro:level", 1));
                     this.mapaUsoAtributos.put("level", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("IDPadre"))) {
-                valor_parentID = DescifrarPalabra(r[i]);
-                if (!valor_parentID.isEmpty() && !valor_parentID.equals("null")) {
+                if (data.usosNivel != null) {
+                    long[] usos = data.usosNivel.get(valor_level == null ? 1L : valor_level);
+                    if (usos == null) {
+                        usos = new long[1];
+                        data.usosNivel.put(valor_level == null ? 1L : valor_level, usos);
+                    }
+                    usos[0]++;
+                }
+                break;
+            case XESPluginStepData.ROL_ID_PADRE:
+                valor_parentID = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_parentID)) {
                     //TODO CODIGO Revisar como debe salir el XID, si como <id> y debe ser un <int>
                     XID xid_parent = this.mapaID.get(valor_parentID);
                     //si el valor de xid_parent es nulo, quiere decir que su padre aun no esta registrado en el sistema.
@@ -361,9 +511,10 @@ public class XESPluginStep extends BaseStep implements StepInterface {
                     map.put("micro:parentId", new XAttributeIDImpl("micro:parentId", xid_parent, extension));
                     this.mapaUsoAtributos.put("parentId", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("ID"))) {
-                valor_ID = DescifrarPalabra(r[i]);
-                if (!valor_ID.isEmpty() && !valor_ID.equals("null")) {
+                break;
+            case XESPluginStepData.ROL_ID:
+                valor_ID = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_ID)) {
                     XID xid = event.getID();
                     this.mapaID.put(valor_ID, xid);
                     XExtension extension = xExtensionManager.getByPrefix("identity");
@@ -371,121 +522,127 @@ public class XESPluginStep extends BaseStep implements StepInterface {
                     map.put("IDKeyXID", new XAttributeLiteralImpl("id", valor_ID));
                     this.mapaUsoAtributos.put("id", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("Moneda"))) {
-                valor_Moneda = DescifrarPalabra(r[i]);
-                if (!valor_Moneda.isEmpty() && !valor_Moneda.equals("null")) {
-                    XExtension extension = xExtensionManager.getByPrefix("cost");
-                    map.put("cost:currency", new XAttributeLiteralImpl("cost:currency", valor_Moneda, extension));
+                break;
+            case XESPluginStepData.ROL_MONEDA:
+                valor_Moneda = XESPluginValueReader.getString(data.metaColumnas[i], r[i]);
+                if (!XESPluginValueReader.esVacio(valor_Moneda)) {
+                    map.put("cost:currency", data.diccionarios[XESPluginStepData.ROL_MONEDA].obtener(valor_Moneda));
                     this.mapaUsoAtributos.put("currency", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("EventoTotal"))) {
-                valor_TotalEvent = DescifrarPalabra(r[i]);
-                if (!valor_TotalEvent.isEmpty() && !valor_TotalEvent.equals("null")) {
-                    map.put("cost:total", new XAttributeContinuousImpl("cost:total", Float.parseFloat(valor_TotalEvent)));
+                break;
+            case XESPluginStepData.ROL_EVENTO_TOTAL:
+                Double valor_TotalEvent = XESPluginValueReader.getNumber(data.metaColumnas[i], r[i]);
+                if (valor_TotalEvent != null) {
+                    map.put("cost:total", new XAttributeContinuousImpl("cost:total", valor_TotalEvent));
                     this.mapaUsoAtributos.put("totalevent", true);
                 }
-            } else if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get("TraceTotal"))) {
-                valor_TotalTrace = DescifrarPalabra(r[i]);
-                if (!valor_TotalTrace.isEmpty() && !valor_TotalTrace.equals("null")) {
+                break;
+            case XESPluginStepData.ROL_TRACE_TOTAL:
+                valor_TotalTrace = XESPluginValueReader.getNumber(data.metaColumnas[i], r[i]);
+                if (valor_TotalTrace != null) {
                     this.mapaUsoAtributos.put("totaltrace", true);
                 }
-            } else {
-                // Para el trabajo con los nuevos atributos
-                for (int k = 0; k < mapa_newatr.size(); k++) {
-                    if (nombresColumnas[i].equalsIgnoreCase(this.mapa_newatr.get(k).getName())) {
-                        valor_newarib = DescifrarPalabra(r[i]);
-                        if (!valor_newarib.isEmpty() && !valor_newarib.equals("null")) {
-                            if (mapa_newatr.get(k).getTypename().equalsIgnoreCase("Activity")) {
-                                //Si son de tipo activity comprobar el tipo de dato
-                                if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("boolean")) {
-                                    map.put(this.mapa_newatr.get(k).getFieldName(), new XAttributeBooleanImpl(mapa_newatr.get(k).getFieldName(), Boolean.parseBoolean(valor_newarib)));
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("String")) {
-                                    map.put(this.mapa_newatr.get(k).getFieldName(), new XAttributeLiteralImpl(mapa_newatr.get(k).getFieldName(), valor_newarib));
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("Integer")) {
-                                    map.put(this.mapa_newatr.get(k).getFieldName(), new XAttributeDiscreteImpl(mapa_newatr.get(k).getFieldName(), Integer.parseInt(valor_newarib)));
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("Date")) {
-                                    try {
-                                        Date date = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss").parse(valor_newarib);
-                                        XExtension extension = xExtensionManager.getByPrefix("time");
-                                        map.put(this.mapa_newatr.get(k).getFieldName(), new XAttributeTimestampImpl(mapa_newatr.get(k).getFieldName(), date, extension));
-                                    } catch (ParseException e) {
-                                        e.printStackTrace();
-                                    }
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("Float")) {
-                                    map.put(this.mapa_newatr.get(k).getFieldName(), new XAttributeContinuousImpl(mapa_newatr.get(k).getFieldName(), Float.parseFloat(valor_newarib)));
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("ID")) {
-                                    map.put(this.mapa_newatr.get(k).getFieldName(), new XAttributeLiteralImpl(mapa_newatr.get(k).getFieldName(), valor_newarib)); //Convertir a ID
-                                }
-                            } else if (mapa_newatr.get(k).getTypename().equalsIgnoreCase("Case")) {
-                                //Si son de tipo case comprobar el tipo de dato
-                                if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("boolean")) {
-                                    xmap.put(mapa_newatr.get(k).getFieldName(), new XAttributeBooleanImpl(mapa_newatr.get(k).getFieldName(), Boolean.parseBoolean(valor_newarib)));
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("String")) {
-                                    xmap.put(mapa_newatr.get(k).getFieldName(), new XAttributeLiteralImpl(mapa_newatr.get(k).getFieldName(), valor_newarib));
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("Integer")) {
-                                    xmap.put(mapa_newatr.get(k).getFieldName(), new XAttributeDiscreteImpl(mapa_newatr.get(k).getFieldName(), Integer.parseInt(valor_newarib)));
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("Date")) {
-                                    try {
-                                        Date date = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss").parse(valor_newarib);
-                                        xmap.put(this.mapa_newatr.get(k).getFieldName(), new XAttributeTimestampImpl(mapa_newatr.get(k).getFieldName(), date));
-                                    } catch (ParseException e) {
-                                        e.printStackTrace();
-                                    }
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("Float")) {
-                                    xmap.put(mapa_newatr.get(k).getFieldName(), new XAttributeContinuousImpl(mapa_newatr.get(k).getFieldName(), Float.parseFloat(valor_newarib)));
-                                } else if (this.mapa_newatr.get(k).getDatodname().equalsIgnoreCase("ID")) {
-                                    xmap.put(mapa_newatr.get(k).getFieldName(), new XAttributeLiteralImpl(mapa_newatr.get(k).getFieldName(), valor_newarib)); //Convertir a ID
-                                }
-                            }
+                break;
+            default:
+                //columna sin rol, no se convierte
+                break;
+            }
+        }
+
+        // Para el trabajo con los nuevos atributos: cada conversor ya conoce su columna, su ambito y su tipo de dato
+        for (XESPluginAttributeConverter conversor : data.conversores) {
+            try {
+                XAttribute atributo = conversor.convertir(r, data.formatoFechaAtributos);
+                if (atributo != null) {
+                    if (conversor.isDeCaso()) {
+                        if (xmap == null) {
+                            xmap = this.factory.createAttributeMap();
                         }
+                        xmap.put(conversor.getClave(), atributo);
+                    } else {
+                        map.put(conversor.getClave(), atributo);
                     }
                 }
-
+            } catch (ParseException e) {
+                //el atributo no se agrega, pero queda constancia en el log del paso
+                logError("Invalid date for attribute " + conversor.getClave() + " in column " + data.metaColumnas[conversor.getColumna()].getName()
+                        + ", value '" + r[conversor.getColumna()] + "' SOURCELINE: " + this.rowCount);
             }
         }
 
-        //vinculo el mapa con datos del evento al evento en si
-        event.setAttributes(new XAttributeMapImpl(map));
+        //al anexar solo se cuenta la clase de la fila: los eventos ya exportados se quitan al releer la traza anterior
+        if (data.anexo != null) {
+            data.filasPorClase[data.anexo.clasificar(valorIP, marcaEvento)]++;
+        }
 
         // para ir adicionando el evento
-        String pos_lista_traces = mapa_IPRegistradas.get(valorIP);
-
-        if (pos_lista_traces == null) {
-            //Pseudo-codigo:: ;)
-            //quiere decir q no se ha tratado nunca con este trace
-            //se crea un nuevo trace, se vincula con el event, y se almacena en la lista d traces (al final)
-            //actualizar mapaIPRegistradas
-            ////// crear en mapaIPRegistradas una nueva entrada con llave valorIP, y valor mapa.size()
-
-
-            //adicionando la extension por instancia de procesos utilizada al log.
-            XExtension extension = xExtensionManager.getByPrefix("concept");
-            this.log.getExtensions().add(extension);
-
-            XTraceBufferedImpl trace = new XTraceBufferedImpl(new XAttributeMapImpl(), new XAttributeMapSerializerImpl());
-            trace.insertOrdered(event);
-            this.lista_traces.add(trace);
-
-            //Adicionando Atributos de Case
-            this.mapa_Atributos_de_trazas.put(trace, xmap);
-            //actualizando mapaIPRegistradas
-            this.mapa_IPRegistradas.put(valorIP, String.valueOf(mapa_IPRegistradas.size())); //=mente pudiera ser size de lista_traces
-            //adicionando el concept name al trace
-            this.mapa_ConceptNameTrace.put(trace, valorIP);
-            if (!valor_TotalTrace.isEmpty()) {
-                //actualizando mapa con costo total de trace
-                this.mapa_CostTotalTrace.put(trace, Float.parseFloat(valor_TotalTrace));
+        if (data.entradaOrdenada) {
+            //la entrada viene ordenada por caso: un cambio de caso cierra la traza anterior
+            if (data.trazaActual == null || !data.trazaActual.getCaso().equals(valorIP)) {
+                if (data.trazaActual != null) {
+                    try {
+                        EmitirTraza(data, data.trazaActual);
+                    } catch (IOException e) {
+                        throw new KettleException("Unable to write trace " + data.trazaActual.getCaso(), e);
+                    }
+                    if (data.casosTerminados != null) {
+                        data.casosTerminados.add(data.trazaActual.getCaso());
+                    }
+                }
+                //un caso que vuelve despues de escribir su traza daria dos trazas con el mismo nombre; al anexar, la
+                //segunda reemplazaria a la primera en el indice de casos y se perderian sus eventos
+                if (data.anexo != null ? data.anexo.isEscrito(valorIP) : data.casosTerminados.contains(valorIP)) {
+                    throw new KettleException(BaseMessages.getString(PKG, "XESPlugin.Exceptions.CaseNotSorted") + " " + valorIP
+                            + " SOURCELINE: " + this.rowCount);
+                }
+                data.trazaActual = NuevaTraza(valorIP, xmap, data.trazasCreadas++);
+            }
+            data.trazaActual.agregar(event, marcaEvento);
+            if (valor_TotalTrace != null) {
+                data.trazaActual.setCostoTotal(valor_TotalTrace);
+            }
+        } else if (data.ordenador != null) {
+            //el evento se codifica junto con lo que aporta la fila a su traza y se deja al ordenamiento externo
+            try {
+                data.ordenador.agregar(XESPluginEventRecord.crear(valorIP, this.rowCount, marcaEvento, event, valor_TotalTrace, xmap));
+            } catch (IOException e) {
+                throw new KettleException("Unable to spill events to disk", e);
+            }
+        } else if (data.particiones != null) {
+            //el evento va a la particion de su caso; las trazas se arman por particion al final
+            try {
+                data.particiones.agregar(XESPluginEventRecord.crear(valorIP, this.rowCount, marcaEvento, event, valor_TotalTrace, xmap));
+            } catch (IOException e) {
+                throw new KettleException("Unable to spill events to disk", e);
+            }
+        } else if (data.almacen != null) {
+            //el evento va al almacen proyectado en memoria; en el heap solo queda la cadena de su traza
+            int pos_cadena = data.cadenas.buscar(valorIP);
+            XESPluginEventStore.Cadena cadena;
+            if (pos_cadena == -1) {
+                cadena = new XESPluginEventStore.Cadena(valorIP);
+                data.cadenas.registrar(valorIP, cadena);
+            } else {
+                cadena = data.cadenas.obtener(pos_cadena);
+            }
+            try {
+                data.almacen.agregar(cadena, XESPluginEventRecord.crear(valorIP, this.rowCount, marcaEvento, event, valor_TotalTrace, xmap));
+            } catch (IOException e) {
+                throw new KettleException("Unable to write to the event store", e);
             }
         } else {
-            //Pseudo-codigo:: ;)
-            //"pos" tiene la posicion de lista de traces en la q se trata a esa IP (pos es "String")
-            // se vincula el event con el trace q esta en esa posicion devuelta
-
-            this.lista_traces.get(Integer.parseInt(pos_lista_traces)).insertOrdered(event);
-
-            if (!valor_TotalTrace.isEmpty()) {
-                //actualizando mapa con costo total de trace
-                this.mapa_CostTotalTrace.put(this.lista_traces.get(Integer.parseInt(pos_lista_traces)), Float.parseFloat(valor_TotalTrace));
+            XESPluginTrace trace = AgregarEvento(this.indice_casos, valorIP, event, marcaEvento, valor_TotalTrace, xmap);
+            if (data.recientes != null) {
+                //con limite de memoria se lleva la cuenta de lo retenido; la traza pasa a ser la mas reciente
+                data.recientes.put(trace.getId(), trace);
+                data.bytesRetenidos += XESPluginTrace.tamanoEvento(event);
+                if (data.bytesRetenidos > data.limiteMemoria) {
+                    try {
+                        Desalojar(data);
+                    } catch (IOException e) {
+                        throw new KettleException("Unable to evict traces to disk", e);
+                    }
+                }
             }
         }
 
@@ -513,13 +670,624 @@ public class XESPluginStep extends BaseStep implements StepInterface {
         return false;
     }
 
-    //Mtodo para obtener el valor de la celda
-    private String DescifrarPalabra(Object arr) {
-        if (arr instanceof byte[]) { //works !
-            byte[] input = ((byte[]) arr);
-            return new String(input);
+    //Metodo que construye el plan de filas: resuelve una sola vez el rol de cada columna de entrada,
+    //respetando el mismo orden de prioridad que tenia la cadena de comparaciones por nombre
+    private void ConstruirPlanFilas(XESPluginStepData data) {
+        String nombresColumnas[] = data.outputRowMeta.getFieldNames();
+        String rolesVista[] = {"InstanciaProceso", "MarcaTiempo", "Actividad", "CicloVida", "Activity_instans", "Recurso",
+                "Rol", "Grupo", "Nivel", "IDPadre", "ID", "Moneda", "EventoTotal", "TraceTotal"};
+        int rolesPlan[] = {XESPluginStepData.ROL_INSTANCIA_PROCESO, XESPluginStepData.ROL_MARCA_TIEMPO, XESPluginStepData.ROL_ACTIVIDAD,
+                XESPluginStepData.ROL_CICLO_VIDA, XESPluginStepData.ROL_ACTIVITY_INSTANS, XESPluginStepData.ROL_RECURSO,
+                XESPluginStepData.ROL_ROL, XESPluginStepData.ROL_GRUPO, XESPluginStepData.ROL_NIVEL, XESPluginStepData.ROL_ID_PADRE,
+                XESPluginStepData.ROL_ID, XESPluginStepData.ROL_MONEDA, XESPluginStepData.ROL_EVENTO_TOTAL, XESPluginStepData.ROL_TRACE_TOTAL};
+
+        data.roles = new int[nombresColumnas.length];
+        data.metaColumnas = new ValueMetaInterface[nombresColumnas.length];
+        List<XESPluginAttributeConverter> conversores = new ArrayList<>();
+
+        for (int i = 0; i < nombresColumnas.length; i++) {
+            data.metaColumnas[i] = data.outputRowMeta.getValueMeta(i);
+            data.roles[i] = XESPluginStepData.ROL_IGNORADA;
+            for (int j = 0; j < rolesVista.length; j++) {
+                if (nombresColumnas[i].equalsIgnoreCase(this.mapa_columnas.get(rolesVista[j]))) {
+                    data.roles[i] = rolesPlan[j];
+                    break;
+                }
+            }
+            if (data.roles[i] != XESPluginStepData.ROL_IGNORADA) {
+                continue;
+            }
+            //una misma columna puede alimentar a varios nuevos atributos
+            for (int k = 0; k < this.mapa_newatr.size(); k++) {
+                if (nombresColumnas[i].equalsIgnoreCase(this.mapa_newatr.get(k).getName())) {
+                    XESPluginAttributeConverter conversor = XESPluginAttributeConverter.compilar(this.mapa_newatr.get(k), i, data.metaColumnas[i]);
+                    if (conversor != null) {
+                        conversores.add(conversor);
+                    }
+                }
+            }
+        }
+        data.conversores = conversores.toArray(new XESPluginAttributeConverter[conversores.size()]);
+
+        //cuantos atributos puede llegar a tener un evento, para dimensionar su mapa una sola vez
+        data.atributosPorEvento = 0;
+        for (int rol : data.roles) {
+            if (rol == XESPluginStepData.ROL_ID) {
+                data.atributosPorEvento += 2; //identity:id y el id original
+            } else if (rol != XESPluginStepData.ROL_IGNORADA && rol != XESPluginStepData.ROL_INSTANCIA_PROCESO
+                    && rol != XESPluginStepData.ROL_TRACE_TOTAL) {
+                data.atributosPorEvento++;
+            }
+        }
+        for (XESPluginAttributeConverter conversor : data.conversores) {
+            if (!conversor.isDeCaso()) {
+                data.atributosPorEvento++;
+            }
         }
-        return String.valueOf(arr);
+    }
+
+    //Vincula el evento con la traza de su caso dentro del indice. Se usa tanto en memoria como al armar
+    //cada particion, por lo que no toca el estado compartido del log
+    private XESPluginTrace AgregarEvento(XESPluginCaseIndex<XESPluginTrace> indice, String caso, XEvent event, Date marcaEvento,
+                                         Double valor_TotalTrace, XAttributeMap xmap) {
+        int pos_lista_traces = indice.buscar(caso);
+        XESPluginTrace trace;
+
+        if (pos_lista_traces == -1) {
+            //Pseudo-codigo:: ;)
+            //quiere decir q no se ha tratado nunca con este trace
+            //se crea un nuevo trace, se vincula con el event, y se registra en el indice de casos (al final)
+            trace = NuevaTraza(caso, xmap, indice.size());
+            trace.agregar(event, marcaEvento);
+            indice.registrar(caso, trace);
+            if (valor_TotalTrace != null) {
+                //actualizando el costo total de trace
+                trace.setCostoTotal(valor_TotalTrace);
+            }
+        } else {
+            //Pseudo-codigo:: ;)
+            //"pos" tiene la posicion de la traza en el indice de casos
+            // se vincula el event con el trace q esta en esa posicion devuelta
+            trace = indice.obtener(pos_lista_traces);
+            trace.agregar(event, marcaEvento);
+
+            if (valor_TotalTrace != null) {
+                //actualizando el costo total de trace
+                trace.setCostoTotal(valor_TotalTrace);
+            }
+        }
+        return trace;
+    }
+
+    //Desaloja a disco las trazas que hace mas tiempo no reciben eventos, hasta quedar en tres cuartos del limite
+    private void Desalojar(XESPluginStepData data) throws IOException {
+        if (data.desalojo == null) {
+            data.desalojo = new XESPluginEventStore(DirectorioTemporal());
+        }
+        long objetivo = data.limiteMemoria / 4 * 3;
+        Iterator<XESPluginTrace> frias = data.recientes.values().iterator();
+        while (data.bytesRetenidos > objetivo && frias.hasNext()) {
+            XESPluginTrace xtrace = frias.next();
+            if (xtrace.getDesalojados() == null) {
+                xtrace.setDesalojados(new XESPluginEventStore.Cadena(xtrace.getCaso()));
+            }
+            for (XEvent evento : xtrace) {
+                data.desalojo.agregar(xtrace.getDesalojados(), XESPluginEventRecord.crear(xtrace.getCaso(), 0, null, evento, null, null));
+            }
+            data.bytesRetenidos -= xtrace.getBytes();
+            xtrace.descargar();
+            //vuelve a la lista cuando reciba otro evento
+            frias.remove();
+            data.trazasDesalojadas++;
+        }
+    }
+
+    //Vuelve a poner delante de la traza los eventos que se habian desalojado a disco
+    private void Recargar(XESPluginStepData data, XESPluginTrace xtrace) throws IOException {
+        List<XEvent> anteriores = new ArrayList<>(xtrace.getDesalojados().getEventos());
+        for (XESPluginEventRecord registro : data.desalojo.leer(xtrace.getDesalojados())) {
+            registro.decodificar(this.factory);
+            anteriores.add(registro.getEvento());
+        }
+        xtrace.anteponer(anteriores);
+        xtrace.setDesalojados(null);
+    }
+
+    //Crea la traza de un caso nuevo con sus atributos de tipo case
+    private XESPluginTrace NuevaTraza(String caso, XAttributeMap atributosCaso, int id) {
+        XESPluginTrace trace = this.factory.createTrace();
+        trace.setId(id);
+        //adicionando el concept name al trace
+        trace.setCaso(caso);
+        //Adicionando Atributos de Case
+        trace.setAtributosCaso(atributosCaso);
+        return trace;
+    }
+
+    //Asigna a la traza su costo total, su nombre y sus atributos de tipo case, la ordena y la escribe
+    private void EmitirTraza(XESPluginStepData data, XESPluginTrace xtrace) throws IOException {
+        if (data.anexo != null && !Anteponer(data, xtrace)) {
+            return;
+        }
+        xtrace.ordenar();
+        if (data.anexo != null) {
+            data.anexo.registrar(xtrace);
+        }
+        XAttributeMap xmapa = xtrace.getAttributes();
+
+        //para no obligar a q cada trace tenga un costo, porq la extension puede no usarse
+        if (this.mapaUsoAtributos.get("totaltrace") != null && xtrace.tieneCosto()) {
+            xmapa.put("totaltracekey", new XAttributeContinuousImpl("cost:total", xtrace.getCostoTotal()));
+        }
+        xmapa.put("conceptnametrace", new XAttributeLiteralImpl("concept:name", xtrace.getCaso()));
+
+        /// /añadiendo el mapa de nuevos atributos de tipo case a la traza
+        if (xtrace.getAtributosCaso() != null) {
+            xmapa.putAll(xtrace.getAtributosCaso());
+            xtrace.setAtributosCaso(null);
+        }
+        //el binario por columnas se escribe antes, porque en paralelo los eventos se descargan al serializarlos
+        if (data.columnar != null) {
+            data.columnar.escribirTraza(xtrace);
+        }
+        if (data.tabla != null) {
+            data.tabla.escribirTraza(xtrace);
+        }
+        if (data.serializador != null) {
+            data.serializador.escribir(xtrace);
+        } else if (data.escritor != null) {
+            data.escritor.escribirTraza(xtrace);
+        }
+    }
+
+    //Al anexar, un caso que ya estaba en un segmento anterior se reescribe entero: se anteponen sus eventos
+    //anteriores y la traza queda como si se hubiera armado con todas las filas, es decir, los atributos de
+    //tipo Case que ya tenia se conservan y el costo total es el ultimo que llego. Devuelve false si todos los
+    //eventos que llegaron ya estaban exportados: la traza anterior sigue vigente y no se reescribe
+    private boolean Anteponer(XESPluginStepData data, XESPluginTrace xtrace) throws IOException {
+        XTrace anterior = data.anexo.anterior(xtrace.getCaso());
+        if (anterior == null) {
+            return true;
+        }
+        QuitarExportados(data, xtrace, anterior);
+        if (xtrace.isEmpty()) {
+            return false;
+        }
+        XAttributeMap xmapa = xtrace.getAttributes();
+        XAttributeMap nuevos = xtrace.getAtributosCaso();
+        for (XAttribute atributo : anterior.getAttributes().values()) {
+            if ("cost:total".equals(atributo.getKey())) {
+                if (!xtrace.tieneCosto()) {
+                    xmapa.put("totaltracekey", atributo);
+                    if (atributo instanceof XAttributeContinuous) {
+                        xtrace.setCostoTotal(((XAttributeContinuous) atributo).getValue());
+                    }
+                }
+            } else if (!"concept:name".equals(atributo.getKey())) {
+                xmapa.put(atributo.getKey(), atributo);
+                if (nuevos != null) {
+                    nuevos.remove(atributo.getKey());
+                }
+            }
+        }
+        xtrace.anteponer(new ArrayList<>(anterior));
+        return true;
+    }
+
+    //Quita de la traza los eventos que ya estaban en la traza anterior: solo pueden serlo los que no son
+    //posteriores a su ultima marca, y se comparan por huella. Cada evento anterior cancela a lo sumo uno nuevo,
+    //asi que un evento repetido que llego mas veces de las que se exporto se conserva
+    private void QuitarExportados(XESPluginStepData data, XESPluginTrace xtrace, XTrace anterior) {
+        long ultima = Long.MIN_VALUE;
+        for (XEvent evento : anterior) {
+            ultima = Math.max(ultima, MarcaEvento(evento));
+        }
+        Map<Long, Integer> exportados = null;
+        Iterator<XEvent> eventos = xtrace.iterator();
+        while (eventos.hasNext()) {
+            XEvent evento = eventos.next();
+            long marca = MarcaEvento(evento);
+            if (marca == Long.MIN_VALUE || marca > ultima) {
+                continue;
+            }
+            if (exportados == null) {
+                exportados = new HashMap<>();
+                for (XEvent exportado : anterior) {
+                    exportados.merge(XESPluginCaseStore.huella(exportado.getAttributes()), 1, Integer::sum);
+                }
+            }
+            long huella = XESPluginCaseStore.huella(evento.getAttributes());
+            Integer veces = exportados.get(huella);
+            if (veces != null) {
+                if (veces == 1) {
+                    exportados.remove(huella);
+                } else {
+                    exportados.put(huella, veces - 1);
+                }
+                eventos.remove();
+                data.eventosExportados++;
+            }
+        }
+    }
+
+    private static long MarcaEvento(XEvent evento) {
+        XAttribute atributo = evento.getAttributes().get("time:timestamp");
+        return atributo instanceof XAttributeTimestamp ? ((XAttributeTimestamp) atributo).getValueMillis() : Long.MIN_VALUE;
+    }
+
+    //Fusiona las corridas del ordenamiento externo y arma cada traza con los registros de su caso.
+    //Los registros llegan ordenados por caso y marca de tiempo, no por llegada, asi que para quedar igual que
+    //en memoria los atributos de tipo Case se toman de la primera fila del caso y el costo de la ultima que lo trae
+    private void EmitirOrdenados(XESPluginStepData data) throws IOException {
+        data.ordenador.terminar();
+        logBasic("External sort: " + data.ordenador.getRegistros() + " events in " + data.ordenador.getCorridas() + " sorted runs");
+        try {
+            XESPluginTrace traza = null;
+            long primeraFila = Long.MAX_VALUE;
+            long ultimaFilaCosto = Long.MIN_VALUE;
+            XESPluginEventRecord registro;
+            while ((registro = data.ordenador.siguiente()) != null) {
+                registro.decodificar(this.factory);
+                if (traza == null || !traza.getCaso().equals(registro.getCaso())) {
+                    if (traza != null) {
+                        EmitirTraza(data, traza);
+                    }
+                    traza = NuevaTraza(registro.getCaso(), null, data.trazasCreadas++);
+                    primeraFila = Long.MAX_VALUE;
+                    ultimaFilaCosto = Long.MIN_VALUE;
+                }
+                //los eventos ya vienen ordenados por marca de tiempo
+                traza.agregar(registro.getEvento(), null);
+                if (registro.getOrden() < primeraFila) {
+                    primeraFila = registro.getOrden();
+                    traza.setAtributosCaso(registro.getAtributosCaso());
+                }
+                if (registro.getCosto() != null && registro.getOrden() > ultimaFilaCosto) {
+                    ultimaFilaCosto = registro.getOrden();
+                    traza.setCostoTotal(registro.getCosto());
+                }
+            }
+            if (traza != null) {
+                EmitirTraza(data, traza);
+            }
+        } finally {
+            data.ordenador.close();
+            data.ordenador = null;
+        }
+    }
+
+    //Arma las trazas de cada particion con la misma logica que en memoria y las escribe particion por particion.
+    //Con varios hilos, las particiones siguientes se arman mientras se escribe la actual; nunca hay mas de
+    //"Hilos" particiones armadas a la vez
+    private void EmitirParticiones(final XESPluginStepData data) throws IOException {
+        data.particiones.terminar();
+        logBasic("Hash partitions: " + data.particiones.getRegistros() + " events in " + data.particiones.getParticiones() + " partitions");
+        int total = data.particiones.getParticiones();
+        int hilos = Math.max(1, Math.min(total, EnteroOpcion("Hilos", 1)));
+        ExecutorService ejecutor = hilos > 1 ? Executors.newFixedThreadPool(hilos) : null;
+        try {
+            ArrayDeque<Future<List<XESPluginTrace>>> enCurso = new ArrayDeque<>();
+            int siguiente = 0;
+            for (int p = 0; p < total; p++) {
+                List<XESPluginTrace> trazas;
+                if (ejecutor == null) {
+                    trazas = ArmarParticion(data, p);
+                } else {
+                    while (siguiente < total && enCurso.size() < hilos) {
+                        final int particion = siguiente++;
+                        enCurso.add(ejecutor.submit(new Callable<List<XESPluginTrace>>() {
+                            @Override
+                            public List<XESPluginTrace> call() throws Exception {
+                                return ArmarParticion(data, particion);
+                            }
+                        }));
+                    }
+                    try {
+                        trazas = enCurso.poll().get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while building partitions");
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw new IOException("Unable to build partition traces", e.getCause());
+                    }
+                }
+                for (XESPluginTrace xtrace : trazas) {
+                    EmitirTraza(data, xtrace);
+                }
+            }
+        } finally {
+            if (ejecutor != null) {
+                ejecutor.shutdownNow();
+            }
+            data.particiones.close();
+            data.particiones = null;
+        }
+    }
+
+    //Carga una particion y arma sus trazas, en el orden en que aparecio cada caso y ya ordenadas
+    private List<XESPluginTrace> ArmarParticion(XESPluginStepData data, int particion) throws IOException {
+        XESPluginCaseIndex<XESPluginTrace> indice = new XESPluginCaseIndex<>();
+        for (XESPluginEventRecord registro : data.particiones.leer(particion)) {
+            registro.decodificar(this.factory);
+            AgregarEvento(indice, registro.getCaso(), registro.getEvento(), registro.getFechaMarca(), registro.getCosto(), registro.getAtributosCaso());
+        }
+        for (XESPluginTrace xtrace : indice.getTrazas()) {
+            xtrace.ordenar();
+        }
+        return indice.getTrazas();
+    }
+
+    //Arma y escribe cada traza del almacen de eventos; solo una traza queda en el heap a la vez.
+    //Los registros de una cadena salen en orden de llegada, asi que se arman igual que en memoria
+    private void EmitirAlmacen(XESPluginStepData data) throws IOException {
+        logBasic("Event store: " + data.almacen.getRegistros() + " events in " + (data.almacen.getBytes() >> 20) + " MB of mapped segments");
+        try {
+            int id = 0;
+            for (XESPluginEventStore.Cadena cadena : data.cadenas.getTrazas()) {
+                XESPluginTrace xtrace = null;
+                for (XESPluginEventRecord registro : data.almacen.leer(cadena)) {
+                    registro.decodificar(this.factory);
+                    if (xtrace == null) {
+                        //los atributos de tipo case son los de la primera fila del caso
+                        xtrace = NuevaTraza(cadena.getCaso(), registro.getAtributosCaso(), id++);
+                    }
+                    xtrace.agregar(registro.getEvento(), registro.getFechaMarca());
+                    if (registro.getCosto() != null) {
+                        xtrace.setCostoTotal(registro.getCosto());
+                    }
+                }
+                EmitirTraza(data, xtrace);
+            }
+        } finally {
+            CerrarAlmacen(data.almacen);
+            data.almacen = null;
+            data.cadenas = null;
+        }
+    }
+
+    //Cierra un almacen de eventos; si su fichero no se puede borrar solo queda constancia en el log
+    private void CerrarAlmacen(XESPluginEventStore almacen) {
+        try {
+            almacen.close();
+        } catch (IOException e) {
+            logError(e.getMessage());
+        }
+    }
+
+    //Limite de memoria en bytes para los modos que vuelcan eventos a disco
+    private long LimiteMemoria() {
+        return Math.max(1, EnteroOpcion("LimiteMemoriaMB", XESPluginStepMeta.LIMITE_MEMORIA_MB_DEFECTO)) * 1024L * 1024L;
+    }
+
+    //Valor entero de una opcion de la vista (admite variables), o el valor por defecto si no es valido
+    private int EnteroOpcion(String clave, int defecto) {
+        String valor = environmentSubstitute(this.mapa_columnas.get(clave));
+        if (valor == null || valor.trim().isEmpty()) {
+            return defecto;
+        }
+        try {
+            return Integer.parseInt(valor.trim());
+        } catch (NumberFormatException e) {
+            logError("Invalid value " + valor + " for " + clave + ", using " + defecto);
+            return defecto;
+        }
+    }
+
+    //Directorio para los ficheros temporales, null para el temporal del sistema
+    private File DirectorioTemporal() {
+        String valor = environmentSubstitute(this.mapa_columnas.get("DirectorioTemporal"));
+        if (valor == null || valor.trim().isEmpty()) {
+            return null;
+        }
+        File directorio = new File(valor.trim());
+        directorio.mkdirs();
+        return directorio;
+    }
+
+    //Construye la cabecera del log y abre el fichero de salida
+    private void AbrirSalida(XESPluginStepMeta meta, XESPluginStepData data) throws IOException {
+        if (data.usosNivel != null) {
+            DefectosObservados(data);
+        }
+        //revisando que atributos se han usado, para globales y extensiones
+        UsoAtributos(meta);
+
+        XAttributeMap xmapaAtributosLog = this.factory.createAttributeMap();
+        xmapaAtributosLog.put("conceptnametrace", new XAttributeLiteralImpl("concept:name", this.getStepname()));
+        this.log.setAttributes(xmapaAtributosLog);
+
+        //trabajando con las rutas de salida
+        String ruta = RutaSalida();
+        //sin indentacion el fichero es mas pequeño y se escribe antes; el XML es el mismo
+        boolean indentar = !XESPluginStepMeta.FORMATO_XML_COMPACTO.equalsIgnoreCase(this.mapa_columnas.get("FormatoXml"));
+        int hilos = EnteroOpcion("Hilos", 1);
+        int nivel = -1;
+        if (XESPluginStepMeta.COMPRESION_GZIP.equalsIgnoreCase(this.mapa_columnas.get("Compresion")) || ruta.toLowerCase().endsWith(".gz")) {
+            //gzip por bloques independientes, comprimidos con los mismos hilos
+            nivel = Math.max(0, Math.min(9, EnteroOpcion("NivelCompresion", XESPluginStepMeta.NIVEL_COMPRESION_DEFECTO)));
+        }
+        //la tabla de eventos no lleva cabecera XES ni se divide: es un solo fichero .csv o .tsv
+        String formato = this.mapa_columnas.get("FormatoSalida");
+        boolean csv = XESPluginStepMeta.FORMATO_SALIDA_CSV.equalsIgnoreCase(formato);
+        if (csv || XESPluginStepMeta.FORMATO_SALIDA_TSV.equalsIgnoreCase(formato)) {
+            String rutaTabla = RutaDerivada(ruta, csv ? ".csv" : ".tsv") + (nivel >= 0 ? ".gz" : "");
+            data.tabla = new XESPluginEventTable(new File(rutaTabla), nivel, hilos, csv ? ',' : '\t', ColumnasTabla(data));
+            return;
+        }
+        //un solo fichero, o varios con la misma cabecera segun la division escogida
+        String division = this.mapa_columnas.get("DivisionSalida");
+        int limiteDefecto = XESPluginSplitWriter.TRAZAS_DEFECTO;
+        if (XESPluginSplitWriter.DIVISION_TAMANO.equalsIgnoreCase(division)) {
+            limiteDefecto = XESPluginSplitWriter.TAMANO_MB_DEFECTO;
+        } else if (XESPluginSplitWriter.DIVISION_HASH.equalsIgnoreCase(division)) {
+            limiteDefecto = XESPluginSplitWriter.FICHEROS_HASH_DEFECTO;
+        }
+        boolean indizar = XESPluginTraceIndex.CON_INDICE.equalsIgnoreCase(this.mapa_columnas.get("IndiceTrazas"));
+        //al anexar se escribe un solo segmento nuevo, siempre con su indice de trazas, y el resto de las salidas lo sigue
+        if (data.anexo != null) {
+            logBasic("Appending segment " + data.anexo.getSegmentoNuevo() + " to a log of " + data.anexo.getCasos() + " cases");
+            if (division != null && !XESPluginSplitWriter.DIVISION_NINGUNA.equalsIgnoreCase(division)) {
+                logBasic("Output division is ignored in append mode");
+            }
+            ruta = data.anexo.rutaSegmento();
+            division = XESPluginSplitWriter.DIVISION_NINGUNA;
+            indizar = true;
+        }
+        //XES, binario por columnas o ambos
+        if (!XESPluginStepMeta.FORMATO_SALIDA_COLUMNAR.equalsIgnoreCase(formato)) {
+            data.escritor = new XESPluginSplitWriter(ruta, this.log, indentar, nivel, hilos, division, EnteroOpcion("LimiteDivision", limiteDefecto),
+                indizar, data.omitirGlobales);
+            data.escritor.abrir();
+
+            //con varios hilos las trazas se serializan en paralelo y se escriben en el mismo orden
+            if (hilos > 1) {
+                data.serializador = new XESPluginParallelSerializer(data.escritor, hilos);
+            }
+        }
+        if (XESPluginStepMeta.FORMATO_SALIDA_COLUMNAR.equalsIgnoreCase(formato) || XESPluginStepMeta.FORMATO_SALIDA_XES_COLUMNAR.equalsIgnoreCase(formato)) {
+            data.columnar = new XESPluginColumnarLog(new File(RutaDerivada(ruta, XESPluginColumnarLog.EXTENSION)), this.log);
+        }
+    }
+
+    //Ruta de salida configurada, output.xes si no hay ninguna
+    private String RutaSalida() {
+        String ruta = this.mapa_columnas.get("RutaSalida");
+        if (ruta == null || ruta.equalsIgnoreCase("")) {
+            ruta = "output.xes";
+        }
+        return ruta;
+    }
+
+    //Anexar solo se aplica a la salida XES: con la tabla de eventos o solo el binario por columnas se sobrescribe
+    private boolean ModoAnexar() {
+        if (!XESPluginSegmentedLog.ESCRITURA_ANEXAR.equalsIgnoreCase(this.mapa_columnas.get("ModoEscritura"))) {
+            return false;
+        }
+        //el manifiesto solo lista segmentos XES: un .xesc al lado tendria solo las trazas de esta ejecucion
+        String formato = this.mapa_columnas.get("FormatoSalida");
+        if (XESPluginStepMeta.FORMATO_SALIDA_CSV.equalsIgnoreCase(formato) || XESPluginStepMeta.FORMATO_SALIDA_TSV.equalsIgnoreCase(formato)
+                || XESPluginStepMeta.FORMATO_SALIDA_COLUMNAR.equalsIgnoreCase(formato) || XESPluginStepMeta.FORMATO_SALIDA_XES_COLUMNAR.equalsIgnoreCase(formato)) {
+            logError("Append mode needs the XES (XML) output alone, the output will be overwritten");
+            return false;
+        }
+        return true;
+    }
+
+    //Los globales de evento pasan a ser el valor mas frecuente de cada atributo, en vez de los valores fijos
+    private void DefectosObservados(XESPluginStepData data) {
+        String claves[] = {"conceptkey", "lifecyclekey", "resourcekey", "rolekey", "groupkey", "currencykey"};
+        int roles[] = {XESPluginStepData.ROL_ACTIVIDAD, XESPluginStepData.ROL_CICLO_VIDA, XESPluginStepData.ROL_RECURSO,
+                XESPluginStepData.ROL_ROL, XESPluginStepData.ROL_GRUPO, XESPluginStepData.ROL_MONEDA};
+        for (int j = 0; j < claves.length; j++) {
+            //el mismo atributo compartido que llevan los eventos, asi se reconoce sin comparar el valor
+            XAttribute frecuente = data.diccionarios[roles[j]].masFrecuente();
+            if (frecuente != null) {
+                this.mapaGlobalAtributos.put(claves[j], frecuente);
+            }
+        }
+        Map.Entry<Long, long[]> nivel = null;
+        for (Map.Entry<Long, long[]> entrada : data.usosNivel.entrySet()) {
+            if (nivel == null || entrada.getValue()[0] > nivel.getValue()[0]
+                    || (entrada.getValue()[0] == nivel.getValue()[0] && entrada.getKey() < nivel.getKey())) {
+                nivel = entrada;
+            }
+        }
+        if (nivel != null) {
+            this.mapaGlobalAtributos.put("levelkey", new XAttributeDiscreteImpl("micro:level", nivel.getKey()));
+        }
+    }
+
+    //Globales de evento que el escritor pudo omitir: las marcas de tiempo se escriben siempre y los atributos
+    //de tipo Case nunca estan en los eventos, aunque tambien se declaren como globales de evento
+    private List<String> GlobalesOmitidos(XESPluginStepData data) {
+        Set<String> deCaso = new HashSet<>();
+        for (XESPluginAttributeConverter conversor : data.conversores) {
+            if (conversor.isDeCaso()) {
+                deCaso.add(conversor.getClave());
+            }
+        }
+        List<String> omitidos = new ArrayList<>();
+        for (XAttribute global : this.log.getGlobalEventAttributes()) {
+            if (!(global instanceof XAttributeTimestamp) && !deCaso.contains(global.getKey())) {
+                omitidos.add(global.getKey());
+            }
+        }
+        return omitidos;
+    }
+
+    //out.xes, out.xes.gz -> out.xesc, out.csv...
+    private static String RutaDerivada(String ruta, String nuevaExtension) {
+        String minusculas = ruta.toLowerCase();
+        for (String extension : new String[]{".xes.gz", ".xes", ".gz"}) {
+            if (minusculas.endsWith(extension)) {
+                return ruta.substring(0, ruta.length() - extension.length()) + nuevaExtension;
+            }
+        }
+        return ruta + nuevaExtension;
+    }
+
+    //Columnas de la tabla de eventos segun el mapeo de la vista: el caso, los atributos estandar mapeados y
+    //los nuevos atributos, primero los de evento y despues los de caso
+    private List<XESPluginEventTable.Columna> ColumnasTabla(XESPluginStepData data) {
+        int rolesTabla[] = {XESPluginStepData.ROL_ACTIVIDAD, XESPluginStepData.ROL_MARCA_TIEMPO, XESPluginStepData.ROL_CICLO_VIDA,
+                XESPluginStepData.ROL_ACTIVITY_INSTANS, XESPluginStepData.ROL_RECURSO, XESPluginStepData.ROL_ROL, XESPluginStepData.ROL_GRUPO,
+                XESPluginStepData.ROL_MONEDA, XESPluginStepData.ROL_EVENTO_TOTAL, XESPluginStepData.ROL_TRACE_TOTAL, XESPluginStepData.ROL_NIVEL,
+                XESPluginStepData.ROL_ID_PADRE, XESPluginStepData.ROL_ID, XESPluginStepData.ROL_ID};
+        String nombres[] = {"concept:name", "time:timestamp", "lifecycle:transition", "concept:instance", "org:resource", "org:role",
+                "org:group", "cost:currency", "cost:total", "case:cost:total", "micro:level", "micro:parentId", "identity:id", "id"};
+        String claves[] = {"concept:name", "time:timestamp", "lifecycle:transition", "concept:instance", "org:resource", "org:role",
+                "org:group", "cost:currency", "cost:total", "totaltracekey", "micro:level", "micro:parentId", "identity:id", "IDKeyXID"};
+
+        List<XESPluginEventTable.Columna> columnas = new ArrayList<>();
+        Set<String> usadas = new HashSet<>();
+        columnas.add(new XESPluginEventTable.Columna("case:concept:name", "conceptnametrace", true));
+        usadas.add("case:concept:name");
+        for (int j = 0; j < rolesTabla.length; j++) {
+            for (int rol : data.roles) {
+                if (rol == rolesTabla[j] && usadas.add(nombres[j])) {
+                    columnas.add(new XESPluginEventTable.Columna(nombres[j], claves[j], rolesTabla[j] == XESPluginStepData.ROL_TRACE_TOTAL));
+                }
+            }
+        }
+        for (XESPluginAttributeConverter conversor : data.conversores) {
+            if (!conversor.isDeCaso() && usadas.add(conversor.getClave())) {
+                columnas.add(new XESPluginEventTable.Columna(conversor.getClave(), conversor.getClave(), false));
+            }
+        }
+        for (XESPluginAttributeConverter conversor : data.conversores) {
+            //los atributos de caso llevan el prefijo case: que usan PM4Py y Disco, si no lo traen ya
+            String nombre = conversor.getClave().startsWith("case:") ? conversor.getClave() : "case:" + conversor.getClave();
+            if (conversor.isDeCaso() && usadas.add(nombre)) {
+                columnas.add(new XESPluginEventTable.Columna(nombre, conversor.getClave(), true));
+            }
+        }
+        return columnas;
+    }
+
+    //Cuando la cabecera se escribe antes de leer los datos, se declara todo lo que el plan de filas puede producir
+    private void UsoAtributosPlan(XESPluginStepData data) {
+        String usos[] = new String[XESPluginStepData.ROL_TRACE_TOTAL + 1];
+        usos[XESPluginStepData.ROL_ACTIVIDAD] = "concept";
+        usos[XESPluginStepData.ROL_CICLO_VIDA] = "lifecycle";
+        usos[XESPluginStepData.ROL_MARCA_TIEMPO] = "timestamp";
+        usos[XESPluginStepData.ROL_RECURSO] = "resource";
+        usos[XESPluginStepData.ROL_ROL] = "role";
+        usos[XESPluginStepData.ROL_GRUPO] = "group";
+        usos[XESPluginStepData.ROL_NIVEL] = "level";
+        usos[XESPluginStepData.ROL_ID_PADRE] = "parentId";
+        usos[XESPluginStepData.ROL_ID] = "id";
+        usos[XESPluginStepData.ROL_MONEDA] = "currency";
+        usos[XESPluginStepData.ROL_EVENTO_TOTAL] = "totalevent";
+        usos[XESPluginStepData.ROL_TRACE_TOTAL] = "totaltrace";
+        for (int rol : data.roles) {
+            if (usos[rol] != null) {
+                this.mapaUsoAtributos.put(usos[rol], true);
+            }
+        }
+        this.log.getExtensions().add(xExtensionManager.getByPrefix("concept"));
     }
 
     //Metodo para conocer que extension se ha usado
@@ -626,6 +1394,62 @@ public class XESPluginStep extends BaseStep implements StepInterface {
         XESPluginStepMeta meta = (XESPluginStepMeta) smi;
         XESPluginStepData data = (XESPluginStepData) sdi;
 
+        //si la transformacion se detuvo antes de terminar, se borran los ficheros temporales
+        if (data.ordenador != null) {
+            data.ordenador.close();
+            data.ordenador = null;
+        }
+        if (data.particiones != null) {
+            data.particiones.close();
+            data.particiones = null;
+        }
+        if (data.almacen != null) {
+            CerrarAlmacen(data.almacen);
+            data.almacen = null;
+        }
+        if (data.desalojo != null) {
+            CerrarAlmacen(data.desalojo);
+            data.desalojo = null;
+        }
+        if (data.serializador != null) {
+            data.serializador.close();
+            data.serializador = null;
+        }
+        //si la transformacion se detuvo o la escritura fallo, las salidas siguen abiertas con sus hilos de compresion:
+        //se descartan, para no dejar un log incompleto que parezca terminado
+        if (data.escritor != null) {
+            try {
+                data.escritor.abortar();
+            } catch (IOException e) {
+                logError("Unable to discard the incomplete XES output", e);
+            }
+            data.escritor = null;
+        }
+        if (data.columnar != null) {
+            try {
+                data.columnar.abortar();
+            } catch (IOException e) {
+                logError("Unable to discard the incomplete columnar log", e);
+            }
+            data.columnar = null;
+        }
+        if (data.tabla != null) {
+            try {
+                data.tabla.abortar();
+            } catch (IOException e) {
+                logError("Unable to discard the incomplete event table", e);
+            }
+            data.tabla = null;
+        }
+        if (data.anexo != null) {
+            try {
+                data.anexo.cerrar();
+            } catch (IOException e) {
+                logError("Unable to close the case index", e);
+            }
+            data.anexo = null;
+        }
+
         super.dispose(meta, data);
     }
 
@@ -23,13 +23,84 @@
 package org.pentaho.di.sdk.samples.steps.demo;
 
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
 
 public class XESPluginStepData extends BaseStepData implements StepDataInterface {
 
+	//Roles que puede tener una columna de entrada dentro del plan de filas
+	public static final int ROL_IGNORADA = 0;
+	public static final int ROL_INSTANCIA_PROCESO = 1;
+	public static final int ROL_MARCA_TIEMPO = 2;
+	public static final int ROL_ACTIVIDAD = 3;
+	public static final int ROL_CICLO_VIDA = 4;
+	public static final int ROL_ACTIVITY_INSTANS = 5;
+	public static final int ROL_RECURSO = 6;
+	public static final int ROL_ROL = 7;
+	public static final int ROL_GRUPO = 8;
+	public static final int ROL_NIVEL = 9;
+	public static final int ROL_ID_PADRE = 10;
+	public static final int ROL_ID = 11;
+	public static final int ROL_MONEDA = 12;
+	public static final int ROL_EVENTO_TOTAL = 13;
+	public static final int ROL_TRACE_TOTAL = 14;
+
 	public RowMetaInterface outputRowMeta;
+
+	//Plan de filas: se construye una sola vez en el bloque "first" de processRow
+	public int[] roles; //rol de cada columna de entrada, indexado por posicion
+	public ValueMetaInterface[] metaColumnas; //metadatos de cada columna, para leer los valores en su tipo nativo
+	public XESPluginAttributeConverter[] conversores; //nuevos atributos compilados, cada uno sabe de que columna se alimenta
+	public int atributosPorEvento; //capacidad inicial del mapa de atributos de cada evento
+
+	//Formatos de fecha compilados una sola vez por ejecucion
+	public XESPluginTimestampParser formatoMarcaTiempo; //null si no se especifico formato
+	public XESPluginTimestampParser formatoFechaAtributos; //para los nuevos atributos de tipo Date
+
+	//Generador de identificadores de eventos, segun la estrategia escogida
+	public XESPluginIdGenerator generadorIds;
+
+	//Salida XES; con la entrada ordenada por caso se abre al inicio y solo se mantiene en memoria la traza actual
+	public XESPluginSplitWriter escritor;
+	public XESPluginParallelSerializer serializador; //serializacion en paralelo, null si se usa un solo hilo
+	public XESPluginColumnarLog columnar; //log binario por columnas, null si no se pidio
+	public XESPluginEventTable tabla; //tabla plana de eventos, null si no se pidio
+	public boolean omitirGlobales; //los atributos de evento iguales a su global no se escriben
+	public Map<Long, long[]> usosNivel; //veces que aparece cada micro:level, para escoger su global
+	public XESPluginSegmentedLog anexo; //segmentos e indice de casos al anexar, null si se sobrescribe la salida
+	public long[] filasPorClase; //filas de casos nuevos, de casos existentes y no posteriores a lo exportado, al anexar
+	public long eventosExportados; //eventos que ya estaban en la traza anterior de su caso y no se vuelven a agregar
+	public boolean entradaOrdenada;
+	public XESPluginTrace trazaActual;
+	public Set<String> casosTerminados; //casos cuya traza ya se escribio, con la entrada ordenada por caso
+	public int trazasCreadas;
+
+	//Ordenamiento externo: los eventos se codifican y se ordenan por caso en disco, con memoria acotada
+	public XESPluginExternalSorter ordenador;
+
+	//Particionado por hash: los eventos de cada caso van a la misma particion en disco y se arman por particion
+	public XESPluginHashPartitioner particiones;
+
+	//Almacen de eventos proyectado en memoria: en el heap solo queda la cadena de cada caso
+	public XESPluginEventStore almacen;
+	public XESPluginCaseIndex<XESPluginEventStore.Cadena> cadenas;
+
+	//Limite de memoria en el modo en memoria: trazas por orden de actualizacion (la primera es la mas fria),
+	//bytes retenidos aproximados y almacen donde se desalojan los eventos de las trazas frias
+	public long limiteMemoria;
+	public long bytesRetenidos;
+	public LinkedHashMap<Integer, XESPluginTrace> recientes;
+	public XESPluginEventStore desalojo;
+	public int trazasDesalojadas;
+
+	//Diccionarios de valores para los atributos literales de baja cardinalidad, indexados por rol
+	public XESPluginValueDictionary[] diccionarios;
 	
     public XESPluginStepData()
 	{
@@ -121,7 +121,10 @@ public class XESPluginStepDialog extends BaseStepDialog implements StepDialogInt
             "dd-MM-yyyy hh:mm:ss",
             "yyyy.MM.dd hh:mm:ss",
             "yyyy/MM/dd hh:mm:ss",
-            "yyyy-MM-dd hh:mm:ss"
+            "yyyy-MM-dd hh:mm:ss",
+            XESPluginTimestampParser.FORMATO_ISO8601,
+            XESPluginTimestampParser.FORMATO_EPOCH_MILIS,
+            XESPluginTimestampParser.FORMATO_EPOCH_SEGUNDOS
     };
 
     /*
@@ -156,6 +159,75 @@ public class XESPluginStepDialog extends BaseStepDialog implements StepDialogInt
     private Combo cmbCostTotalEvent;
     private Combo cmbCostCurrency;
 
+    /*
+    * Opciones de ejecucion y de salida
+    * */
+    private CTabItem wOptionsTab;
+    private Composite wOptionsComp;
+    private Group wOptionsGroup;
+
+    private Combo cmbEstrategiaID;
+    private String estrategiaIDItems[] = {
+            XESPluginIdGenerator.ESTRATEGIA_AUTOMATICA,
+            XESPluginIdGenerator.ESTRATEGIA_SECUENCIAL,
+            XESPluginIdGenerator.ESTRATEGIA_ALEATORIA
+    };
+    private Combo cmbModoEntrada;
+    private String modoEntradaItems[] = {
+            XESPluginStepMeta.MODO_ENTRADA_MEMORIA,
+            XESPluginStepMeta.MODO_ENTRADA_ORDENADA,
+            XESPluginStepMeta.MODO_ENTRADA_ORDENAMIENTO_EXTERNO,
+            XESPluginStepMeta.MODO_ENTRADA_PARTICIONES,
+            XESPluginStepMeta.MODO_ENTRADA_ALMACEN
+    };
+    private TextVar wLimiteMemoriaMB;
+    private TextVar wDirectorioTemporal;
+    private TextVar wParticiones;
+    private TextVar wHilos;
+    private Combo cmbFormatoXml;
+    private String formatoXmlItems[] = {
+            XESPluginStepMeta.FORMATO_XML_INDENTADO,
+            XESPluginStepMeta.FORMATO_XML_COMPACTO
+    };
+    private Combo cmbCompresion;
+    private String compresionItems[] = {
+            XESPluginStepMeta.COMPRESION_NINGUNA,
+            XESPluginStepMeta.COMPRESION_GZIP
+    };
+    private TextVar wNivelCompresion;
+    private Combo cmbDivisionSalida;
+    private String divisionSalidaItems[] = {
+            XESPluginSplitWriter.DIVISION_NINGUNA,
+            XESPluginSplitWriter.DIVISION_TRAZAS,
+            XESPluginSplitWriter.DIVISION_TAMANO,
+            XESPluginSplitWriter.DIVISION_HASH,
+            XESPluginSplitWriter.DIVISION_MES
+    };
+    private TextVar wLimiteDivision;
+    private Combo cmbIndiceTrazas;
+    private String indiceTrazasItems[] = {
+            XESPluginTraceIndex.SIN_INDICE,
+            XESPluginTraceIndex.CON_INDICE
+    };
+    private Combo cmbFormatoSalida;
+    private String formatoSalidaItems[] = {
+            XESPluginStepMeta.FORMATO_SALIDA_XES,
+            XESPluginStepMeta.FORMATO_SALIDA_COLUMNAR,
+            XESPluginStepMeta.FORMATO_SALIDA_XES_COLUMNAR,
+            XESPluginStepMeta.FORMATO_SALIDA_CSV,
+            XESPluginStepMeta.FORMATO_SALIDA_TSV
+    };
+    private Combo cmbOmitirGlobales;
+    private String omitirGlobalesItems[] = {
+            XESPluginStepMeta.OMITIR_GLOBALES_NO,
+            XESPluginStepMeta.OMITIR_GLOBALES_SI
+    };
+    private Combo cmbModoEscritura;
+    private String modoEscrituraItems[] = {
+            XESPluginSegmentedLog.ESCRITURA_SOBRESCRIBIR,
+            XESPluginSegmentedLog.ESCRITURA_ANEXAR
+    };
+
     /*
     * Generales
     * */
@@ -316,6 +388,7 @@ public class XESPluginStepDialog extends BaseStepDialog implements StepDialogInt
         AddMicroTab();
         AddCostTab();
         field();
+        AddOptionsTab();
 
         //Setting tooltip text
         SetTooltipText();
@@ -382,6 +455,15 @@ public class XESPluginStepDialog extends BaseStepDialog implements StepDialogInt
         cmbLevel.addSelectionListener(lsDef);
         cmbParentID.addSelectionListener(lsDef);
         cmbID.addSelectionListener(lsDef);
+        cmbEstrategiaID.addSelectionListener(lsDef);
+        cmbModoEntrada.addSelectionListener(lsDef);
+        cmbFormatoXml.addSelectionListener(lsDef);
+        cmbCompresion.addSelectionListener(lsDef);
+        cmbDivisionSalida.addSelectionListener(lsDef);
+        cmbIndiceTrazas.addSelectionListener(lsDef);
+        cmbFormatoSalida.addSelectionListener(lsDef);
+        cmbOmitirGlobales.addSelectionListener(lsDef);
+        cmbModoEscritura.addSelectionListener(lsDef);
 
         // Detect X or ALT-F4 or something that kills this window and cancel the dialog properly
         shell.addShellListener(new ShellAdapter() {
@@ -429,6 +511,21 @@ public class XESPluginStepDialog extends BaseStepDialog implements StepDialogInt
         cmbCostTotalEvent.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.TotalEvent"));
         cmbCostCurrency.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.Currency"));
         cmbActivityInstans.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.Activity_Instans"));
+        cmbEstrategiaID.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.IdStrategy"));
+        cmbModoEntrada.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.InputMode"));
+        wLimiteMemoriaMB.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.MemoryLimit"));
+        wDirectorioTemporal.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.TempDirectory"));
+        wParticiones.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.Partitions"));
+        wHilos.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.Threads"));
+        cmbFormatoXml.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.XmlFormat"));
+        cmbCompresion.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.Compression"));
+        wNivelCompresion.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.CompressionLevel"));
+        cmbDivisionSalida.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.SplitOutput"));
+        wLimiteDivision.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.SplitLimit"));
+        cmbIndiceTrazas.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.TraceIndex"));
+        cmbFormatoSalida.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.OutputFormat"));
+        cmbOmitirGlobales.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.GlobalDefaults"));
+        cmbModoEscritura.setToolTipText(BaseMessages.getString(PKG, "XESPlugin.Tooltip.WriteMode"));
 
 
     }
@@ -1090,6 +1187,351 @@ public class XESPluginStepDialog extends BaseStepDialog implements StepDialogInt
 
     }
 
+    private void AddOptionsTab() {
+        //*************
+        //Options tab *
+        //*************
+        wOptionsTab = new CTabItem(wTabFolder, SWT.NONE);
+        wOptionsTab.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.Tabname"));
+
+        wOptionsComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wOptionsComp);
+
+        FormLayout optionsLayout = new FormLayout();
+        optionsLayout.marginWidth = 3;
+        optionsLayout.marginHeight = 3;
+        wOptionsComp.setLayout(optionsLayout);
+
+        wOptionsGroup = new Group(wOptionsComp, SWT.SHADOW_NONE);
+        props.setLook(wOptionsGroup);
+        wOptionsGroup.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.Groupname"));
+
+        FormLayout optionsgroupLayout = new FormLayout();
+        optionsgroupLayout.marginWidth = 10;
+        optionsgroupLayout.marginHeight = 10;
+        wOptionsGroup.setLayout(optionsgroupLayout);
+
+        // para la estrategia de identificadores de eventos
+        Label wlEstrategiaID = new Label(wOptionsGroup, SWT.RIGHT);
+        wlEstrategiaID.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.IdStrategy"));
+        props.setLook(wlEstrategiaID);
+        FormData fdlEstrategiaID = new FormData();
+        fdlEstrategiaID.left = new FormAttachment(0, 0);
+        fdlEstrategiaID.right = new FormAttachment(middle, -margin);
+        fdlEstrategiaID.top = new FormAttachment(0, margin);
+        wlEstrategiaID.setLayoutData(fdlEstrategiaID);
+
+        cmbEstrategiaID = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbEstrategiaID);
+        cmbEstrategiaID.addModifyListener(lsMod);
+        cmbEstrategiaID.setItems(estrategiaIDItems);
+        cmbEstrategiaID.select(0);
+        FormData fdEstrategiaID = new FormData();
+        fdEstrategiaID.left = new FormAttachment(middle, 0);
+        fdEstrategiaID.right = new FormAttachment(100, 0);
+        fdEstrategiaID.top = new FormAttachment(0, margin);
+        cmbEstrategiaID.setLayoutData(fdEstrategiaID);
+
+        // para el modo de entrada
+        Label wlModoEntrada = new Label(wOptionsGroup, SWT.RIGHT);
+        wlModoEntrada.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.InputMode"));
+        props.setLook(wlModoEntrada);
+        FormData fdlModoEntrada = new FormData();
+        fdlModoEntrada.left = new FormAttachment(0, 0);
+        fdlModoEntrada.right = new FormAttachment(middle, -margin);
+        fdlModoEntrada.top = new FormAttachment(cmbEstrategiaID, margin);
+        wlModoEntrada.setLayoutData(fdlModoEntrada);
+
+        cmbModoEntrada = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbModoEntrada);
+        cmbModoEntrada.addModifyListener(lsMod);
+        cmbModoEntrada.setItems(modoEntradaItems);
+        cmbModoEntrada.select(0);
+        FormData fdModoEntrada = new FormData();
+        fdModoEntrada.left = new FormAttachment(middle, 0);
+        fdModoEntrada.right = new FormAttachment(100, 0);
+        fdModoEntrada.top = new FormAttachment(cmbEstrategiaID, margin);
+        cmbModoEntrada.setLayoutData(fdModoEntrada);
+
+        // limite de memoria para los modos que vuelcan a disco
+        Label wlLimiteMemoriaMB = new Label(wOptionsGroup, SWT.RIGHT);
+        wlLimiteMemoriaMB.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.MemoryLimit"));
+        props.setLook(wlLimiteMemoriaMB);
+        FormData fdlLimiteMemoriaMB = new FormData();
+        fdlLimiteMemoriaMB.left = new FormAttachment(0, 0);
+        fdlLimiteMemoriaMB.right = new FormAttachment(middle, -margin);
+        fdlLimiteMemoriaMB.top = new FormAttachment(cmbModoEntrada, margin);
+        wlLimiteMemoriaMB.setLayoutData(fdlLimiteMemoriaMB);
+
+        wLimiteMemoriaMB = new TextVar(transMeta, wOptionsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wLimiteMemoriaMB);
+        wLimiteMemoriaMB.addModifyListener(lsMod);
+        FormData fdLimiteMemoriaMB = new FormData();
+        fdLimiteMemoriaMB.left = new FormAttachment(middle, 0);
+        fdLimiteMemoriaMB.right = new FormAttachment(100, 0);
+        fdLimiteMemoriaMB.top = new FormAttachment(cmbModoEntrada, margin);
+        wLimiteMemoriaMB.setLayoutData(fdLimiteMemoriaMB);
+
+        // directorio para los ficheros temporales
+        Label wlDirectorioTemporal = new Label(wOptionsGroup, SWT.RIGHT);
+        wlDirectorioTemporal.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.TempDirectory"));
+        props.setLook(wlDirectorioTemporal);
+        FormData fdlDirectorioTemporal = new FormData();
+        fdlDirectorioTemporal.left = new FormAttachment(0, 0);
+        fdlDirectorioTemporal.right = new FormAttachment(middle, -margin);
+        fdlDirectorioTemporal.top = new FormAttachment(wLimiteMemoriaMB, margin);
+        wlDirectorioTemporal.setLayoutData(fdlDirectorioTemporal);
+
+        wDirectorioTemporal = new TextVar(transMeta, wOptionsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wDirectorioTemporal);
+        wDirectorioTemporal.addModifyListener(lsMod);
+        FormData fdDirectorioTemporal = new FormData();
+        fdDirectorioTemporal.left = new FormAttachment(middle, 0);
+        fdDirectorioTemporal.right = new FormAttachment(100, 0);
+        fdDirectorioTemporal.top = new FormAttachment(wLimiteMemoriaMB, margin);
+        wDirectorioTemporal.setLayoutData(fdDirectorioTemporal);
+
+        // cantidad de particiones por hash
+        Label wlParticiones = new Label(wOptionsGroup, SWT.RIGHT);
+        wlParticiones.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.Partitions"));
+        props.setLook(wlParticiones);
+        FormData fdlParticiones = new FormData();
+        fdlParticiones.left = new FormAttachment(0, 0);
+        fdlParticiones.right = new FormAttachment(middle, -margin);
+        fdlParticiones.top = new FormAttachment(wDirectorioTemporal, margin);
+        wlParticiones.setLayoutData(fdlParticiones);
+
+        wParticiones = new TextVar(transMeta, wOptionsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wParticiones);
+        wParticiones.addModifyListener(lsMod);
+        FormData fdParticiones = new FormData();
+        fdParticiones.left = new FormAttachment(middle, 0);
+        fdParticiones.right = new FormAttachment(100, 0);
+        fdParticiones.top = new FormAttachment(wDirectorioTemporal, margin);
+        wParticiones.setLayoutData(fdParticiones);
+
+        // hilos de trabajo
+        Label wlHilos = new Label(wOptionsGroup, SWT.RIGHT);
+        wlHilos.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.Threads"));
+        props.setLook(wlHilos);
+        FormData fdlHilos = new FormData();
+        fdlHilos.left = new FormAttachment(0, 0);
+        fdlHilos.right = new FormAttachment(middle, -margin);
+        fdlHilos.top = new FormAttachment(wParticiones, margin);
+        wlHilos.setLayoutData(fdlHilos);
+
+        wHilos = new TextVar(transMeta, wOptionsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wHilos);
+        wHilos.addModifyListener(lsMod);
+        FormData fdHilos = new FormData();
+        fdHilos.left = new FormAttachment(middle, 0);
+        fdHilos.right = new FormAttachment(100, 0);
+        fdHilos.top = new FormAttachment(wParticiones, margin);
+        wHilos.setLayoutData(fdHilos);
+
+        // para el formato del XML de salida
+        Label wlFormatoXml = new Label(wOptionsGroup, SWT.RIGHT);
+        wlFormatoXml.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.XmlFormat"));
+        props.setLook(wlFormatoXml);
+        FormData fdlFormatoXml = new FormData();
+        fdlFormatoXml.left = new FormAttachment(0, 0);
+        fdlFormatoXml.right = new FormAttachment(middle, -margin);
+        fdlFormatoXml.top = new FormAttachment(wHilos, margin);
+        wlFormatoXml.setLayoutData(fdlFormatoXml);
+
+        cmbFormatoXml = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbFormatoXml);
+        cmbFormatoXml.addModifyListener(lsMod);
+        cmbFormatoXml.setItems(formatoXmlItems);
+        cmbFormatoXml.select(0);
+        FormData fdFormatoXml = new FormData();
+        fdFormatoXml.left = new FormAttachment(middle, 0);
+        fdFormatoXml.right = new FormAttachment(100, 0);
+        fdFormatoXml.top = new FormAttachment(wHilos, margin);
+        cmbFormatoXml.setLayoutData(fdFormatoXml);
+
+        // para la compresion de la salida
+        Label wlCompresion = new Label(wOptionsGroup, SWT.RIGHT);
+        wlCompresion.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.Compression"));
+        props.setLook(wlCompresion);
+        FormData fdlCompresion = new FormData();
+        fdlCompresion.left = new FormAttachment(0, 0);
+        fdlCompresion.right = new FormAttachment(middle, -margin);
+        fdlCompresion.top = new FormAttachment(cmbFormatoXml, margin);
+        wlCompresion.setLayoutData(fdlCompresion);
+
+        cmbCompresion = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbCompresion);
+        cmbCompresion.addModifyListener(lsMod);
+        cmbCompresion.setItems(compresionItems);
+        cmbCompresion.select(0);
+        FormData fdCompresion = new FormData();
+        fdCompresion.left = new FormAttachment(middle, 0);
+        fdCompresion.right = new FormAttachment(100, 0);
+        fdCompresion.top = new FormAttachment(cmbFormatoXml, margin);
+        cmbCompresion.setLayoutData(fdCompresion);
+
+        // para el nivel de compresion
+        Label wlNivelCompresion = new Label(wOptionsGroup, SWT.RIGHT);
+        wlNivelCompresion.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.CompressionLevel"));
+        props.setLook(wlNivelCompresion);
+        FormData fdlNivelCompresion = new FormData();
+        fdlNivelCompresion.left = new FormAttachment(0, 0);
+        fdlNivelCompresion.right = new FormAttachment(middle, -margin);
+        fdlNivelCompresion.top = new FormAttachment(cmbCompresion, margin);
+        wlNivelCompresion.setLayoutData(fdlNivelCompresion);
+
+        wNivelCompresion = new TextVar(transMeta, wOptionsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wNivelCompresion);
+        wNivelCompresion.addModifyListener(lsMod);
+        FormData fdNivelCompresion = new FormData();
+        fdNivelCompresion.left = new FormAttachment(middle, 0);
+        fdNivelCompresion.right = new FormAttachment(100, 0);
+        fdNivelCompresion.top = new FormAttachment(cmbCompresion, margin);
+        wNivelCompresion.setLayoutData(fdNivelCompresion);
+
+        // para dividir la salida en varios ficheros
+        Label wlDivisionSalida = new Label(wOptionsGroup, SWT.RIGHT);
+        wlDivisionSalida.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.SplitOutput"));
+        props.setLook(wlDivisionSalida);
+        FormData fdlDivisionSalida = new FormData();
+        fdlDivisionSalida.left = new FormAttachment(0, 0);
+        fdlDivisionSalida.right = new FormAttachment(middle, -margin);
+        fdlDivisionSalida.top = new FormAttachment(wNivelCompresion, margin);
+        wlDivisionSalida.setLayoutData(fdlDivisionSalida);
+
+        cmbDivisionSalida = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbDivisionSalida);
+        cmbDivisionSalida.addModifyListener(lsMod);
+        cmbDivisionSalida.setItems(divisionSalidaItems);
+        cmbDivisionSalida.select(0);
+        FormData fdDivisionSalida = new FormData();
+        fdDivisionSalida.left = new FormAttachment(middle, 0);
+        fdDivisionSalida.right = new FormAttachment(100, 0);
+        fdDivisionSalida.top = new FormAttachment(wNivelCompresion, margin);
+        cmbDivisionSalida.setLayoutData(fdDivisionSalida);
+
+        // para el limite de cada fichero
+        Label wlLimiteDivision = new Label(wOptionsGroup, SWT.RIGHT);
+        wlLimiteDivision.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.SplitLimit"));
+        props.setLook(wlLimiteDivision);
+        FormData fdlLimiteDivision = new FormData();
+        fdlLimiteDivision.left = new FormAttachment(0, 0);
+        fdlLimiteDivision.right = new FormAttachment(middle, -margin);
+        fdlLimiteDivision.top = new FormAttachment(cmbDivisionSalida, margin);
+        wlLimiteDivision.setLayoutData(fdlLimiteDivision);
+
+        wLimiteDivision = new TextVar(transMeta, wOptionsGroup, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wLimiteDivision);
+        wLimiteDivision.addModifyListener(lsMod);
+        FormData fdLimiteDivision = new FormData();
+        fdLimiteDivision.left = new FormAttachment(middle, 0);
+        fdLimiteDivision.right = new FormAttachment(100, 0);
+        fdLimiteDivision.top = new FormAttachment(cmbDivisionSalida, margin);
+        wLimiteDivision.setLayoutData(fdLimiteDivision);
+
+        // para el indice de trazas
+        Label wlIndiceTrazas = new Label(wOptionsGroup, SWT.RIGHT);
+        wlIndiceTrazas.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.TraceIndex"));
+        props.setLook(wlIndiceTrazas);
+        FormData fdlIndiceTrazas = new FormData();
+        fdlIndiceTrazas.left = new FormAttachment(0, 0);
+        fdlIndiceTrazas.right = new FormAttachment(middle, -margin);
+        fdlIndiceTrazas.top = new FormAttachment(wLimiteDivision, margin);
+        wlIndiceTrazas.setLayoutData(fdlIndiceTrazas);
+
+        cmbIndiceTrazas = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbIndiceTrazas);
+        cmbIndiceTrazas.addModifyListener(lsMod);
+        cmbIndiceTrazas.setItems(indiceTrazasItems);
+        cmbIndiceTrazas.select(0);
+        FormData fdIndiceTrazas = new FormData();
+        fdIndiceTrazas.left = new FormAttachment(middle, 0);
+        fdIndiceTrazas.right = new FormAttachment(100, 0);
+        fdIndiceTrazas.top = new FormAttachment(wLimiteDivision, margin);
+        cmbIndiceTrazas.setLayoutData(fdIndiceTrazas);
+
+        // para el formato del log de salida
+        Label wlFormatoSalida = new Label(wOptionsGroup, SWT.RIGHT);
+        wlFormatoSalida.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.OutputFormat"));
+        props.setLook(wlFormatoSalida);
+        FormData fdlFormatoSalida = new FormData();
+        fdlFormatoSalida.left = new FormAttachment(0, 0);
+        fdlFormatoSalida.right = new FormAttachment(middle, -margin);
+        fdlFormatoSalida.top = new FormAttachment(cmbIndiceTrazas, margin);
+        wlFormatoSalida.setLayoutData(fdlFormatoSalida);
+
+        cmbFormatoSalida = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbFormatoSalida);
+        cmbFormatoSalida.addModifyListener(lsMod);
+        cmbFormatoSalida.setItems(formatoSalidaItems);
+        cmbFormatoSalida.select(0);
+        FormData fdFormatoSalida = new FormData();
+        fdFormatoSalida.left = new FormAttachment(middle, 0);
+        fdFormatoSalida.right = new FormAttachment(100, 0);
+        fdFormatoSalida.top = new FormAttachment(cmbIndiceTrazas, margin);
+        cmbFormatoSalida.setLayoutData(fdFormatoSalida);
+
+        // para omitir los atributos iguales a su global
+        Label wlOmitirGlobales = new Label(wOptionsGroup, SWT.RIGHT);
+        wlOmitirGlobales.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.GlobalDefaults"));
+        props.setLook(wlOmitirGlobales);
+        FormData fdlOmitirGlobales = new FormData();
+        fdlOmitirGlobales.left = new FormAttachment(0, 0);
+        fdlOmitirGlobales.right = new FormAttachment(middle, -margin);
+        fdlOmitirGlobales.top = new FormAttachment(cmbFormatoSalida, margin);
+        wlOmitirGlobales.setLayoutData(fdlOmitirGlobales);
+
+        cmbOmitirGlobales = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbOmitirGlobales);
+        cmbOmitirGlobales.addModifyListener(lsMod);
+        cmbOmitirGlobales.setItems(omitirGlobalesItems);
+        cmbOmitirGlobales.select(0);
+        FormData fdOmitirGlobales = new FormData();
+        fdOmitirGlobales.left = new FormAttachment(middle, 0);
+        fdOmitirGlobales.right = new FormAttachment(100, 0);
+        fdOmitirGlobales.top = new FormAttachment(cmbFormatoSalida, margin);
+        cmbOmitirGlobales.setLayoutData(fdOmitirGlobales);
+
+        // para anexar un segmento nuevo en vez de sobrescribir la salida
+        Label wlModoEscritura = new Label(wOptionsGroup, SWT.RIGHT);
+        wlModoEscritura.setText(BaseMessages.getString(PKG, "XESPlugin.Tab.Options.WriteMode"));
+        props.setLook(wlModoEscritura);
+        FormData fdlModoEscritura = new FormData();
+        fdlModoEscritura.left = new FormAttachment(0, 0);
+        fdlModoEscritura.right = new FormAttachment(middle, -margin);
+        fdlModoEscritura.top = new FormAttachment(cmbOmitirGlobales, margin);
+        wlModoEscritura.setLayoutData(fdlModoEscritura);
+
+        cmbModoEscritura = new Combo(wOptionsGroup, SWT.READ_ONLY);
+        props.setLook(cmbModoEscritura);
+        cmbModoEscritura.addModifyListener(lsMod);
+        cmbModoEscritura.setItems(modoEscrituraItems);
+        cmbModoEscritura.select(0);
+        FormData fdModoEscritura = new FormData();
+        fdModoEscritura.left = new FormAttachment(middle, 0);
+        fdModoEscritura.right = new FormAttachment(100, 0);
+        fdModoEscritura.top = new FormAttachment(cmbOmitirGlobales, margin);
+        cmbModoEscritura.setLayoutData(fdModoEscritura);
+
+        FormData fdOptionsGroup = new FormData();
+        fdOptionsGroup.left = new FormAttachment(0, margin);
+        fdOptionsGroup.top = new FormAttachment(0, margin);
+        fdOptionsGroup.right = new FormAttachment(100, -margin);
+        wOptionsGroup.setLayoutData(fdOptionsGroup);
+
+        FormData fdOptionsComp = new FormData();
+        fdOptionsComp.left = new FormAttachment(0, 0);
+        fdOptionsComp.top = new FormAttachment(0, 0);
+        fdOptionsComp.right = new FormAttachment(100, 0);
+        fdOptionsComp.bottom = new FormAttachment(100, 0);
+        wOptionsComp.setLayoutData(fdOptionsComp);
+
+        wOptionsComp.layout();
+        wOptionsTab.setControl(wOptionsComp);
+        props.setLook(wOptionsComp);
+    }
+
     //Metodo que se hace cargo de guardar la direccion de salida del xes
     private void OutputPathShow() {
         FileDialog dialog = new FileDialog(shell, SWT.SAVE);
@@ -1176,6 +1618,51 @@ public class XESPluginStepDialog extends BaseStepDialog implements StepDialogInt
             if (meta.getMapa_vista().get("EventoTotal") != null) {
                 cmbCostTotalEvent.setText(meta.getMapa_vista().get("EventoTotal"));
             }
+            if (meta.getMapa_vista().get("EstrategiaID") != null) {
+                cmbEstrategiaID.setText(meta.getMapa_vista().get("EstrategiaID"));
+            }
+            if (meta.getMapa_vista().get("ModoEntrada") != null) {
+                cmbModoEntrada.setText(meta.getMapa_vista().get("ModoEntrada"));
+            }
+            if (meta.getMapa_vista().get("LimiteMemoriaMB") != null) {
+                wLimiteMemoriaMB.setText(meta.getMapa_vista().get("LimiteMemoriaMB"));
+            }
+            if (meta.getMapa_vista().get("DirectorioTemporal") != null) {
+                wDirectorioTemporal.setText(meta.getMapa_vista().get("DirectorioTemporal"));
+            }
+            if (meta.getMapa_vista().get("Particiones") != null) {
+                wParticiones.setText(meta.getMapa_vista().get("Particiones"));
+            }
+            if (meta.getMapa_vista().get("Hilos") != null) {
+                wHilos.setText(meta.getMapa_vista().get("Hilos"));
+            }
+            if (meta.getMapa_vista().get("FormatoXml") != null) {
+                cmbFormatoXml.setText(meta.getMapa_vista().get("FormatoXml"));
+            }
+            if (meta.getMapa_vista().get("Compresion") != null) {
+                cmbCompresion.setText(meta.getMapa_vista().get("Compresion"));
+            }
+            if (meta.getMapa_vista().get("NivelCompresion") != null) {
+                wNivelCompresion.setText(meta.getMapa_vista().get("NivelCompresion"));
+            }
+            if (meta.getMapa_vista().get("DivisionSalida") != null) {
+                cmbDivisionSalida.setText(meta.getMapa_vista().get("DivisionSalida"));
+            }
+            if (meta.getMapa_vista().get("LimiteDivision") != null) {
+                wLimiteDivision.setText(meta.getMapa_vista().get("LimiteDivision"));
+            }
+            if (meta.getMapa_vista().get("IndiceTrazas") != null) {
+                cmbIndiceTrazas.setText(meta.getMapa_vista().get("IndiceTrazas"));
+            }
+            if (meta.getMapa_vista().get("FormatoSalida") != null) {
+                cmbFormatoSalida.setText(meta.getMapa_vista().get("FormatoSalida"));
+            }
+            if (meta.getMapa_vista().get("OmitirGlobales") != null) {
+                cmbOmitirGlobales.setText(meta.getMapa_vista().get("OmitirGlobales"));
+            }
+            if (meta.getMapa_vista().get("ModoEscritura") != null) {
+                cmbModoEscritura.setText(meta.getMapa_vista().get("ModoEscritura"));
+            }
         }
         //codigo para escribir las celdas de la tabla
         if(meta.getNewatr() != null) {
@@ -1377,6 +1864,51 @@ public class XESPluginStepDialog extends BaseStepDialog implements StepDialogInt
         if (cmbCostTotalEvent.getSelectionIndex() != -1) {
             map_vista.put("EventoTotal", cmbCostTotalEvent.getItem(cmbCostTotalEvent.getSelectionIndex()));
         }
+        if (cmbEstrategiaID.getSelectionIndex() != -1) {
+            map_vista.put("EstrategiaID", cmbEstrategiaID.getItem(cmbEstrategiaID.getSelectionIndex()));
+        }
+        if (cmbModoEntrada.getSelectionIndex() != -1) {
+            map_vista.put("ModoEntrada", cmbModoEntrada.getItem(cmbModoEntrada.getSelectionIndex()));
+        }
+        if (wLimiteMemoriaMB.getText() != null && !wLimiteMemoriaMB.getText().trim().isEmpty()) {
+            map_vista.put("LimiteMemoriaMB", wLimiteMemoriaMB.getText().trim());
+        }
+        if (wDirectorioTemporal.getText() != null && !wDirectorioTemporal.getText().trim().isEmpty()) {
+            map_vista.put("DirectorioTemporal", wDirectorioTemporal.getText().trim());
+        }
+        if (wParticiones.getText() != null && !wParticiones.getText().trim().isEmpty()) {
+            map_vista.put("Particiones", wParticiones.getText().trim());
+        }
+        if (wHilos.getText() != null && !wHilos.getText().trim().isEmpty()) {
+            map_vista.put("Hilos", wHilos.getText().trim());
+        }
+        if (cmbFormatoXml.getSelectionIndex() != -1) {
+            map_vista.put("FormatoXml", cmbFormatoXml.getItem(cmbFormatoXml.getSelectionIndex()));
+        }
+        if (cmbCompresion.getSelectionIndex() != -1) {
+            map_vista.put("Compresion", cmbCompresion.getItem(cmbCompresion.getSelectionIndex()));
+        }
+        if (wNivelCompresion.getText() != null && !wNivelCompresion.getText().trim().isEmpty()) {
+            map_vista.put("NivelCompresion", wNivelCompresion.getText().trim());
+        }
+        if (cmbDivisionSalida.getSelectionIndex() != -1) {
+            map_vista.put("DivisionSalida", cmbDivisionSalida.getItem(cmbDivisionSalida.getSelectionIndex()));
+        }
+        if (wLimiteDivision.getText() != null && !wLimiteDivision.getText().trim().isEmpty()) {
+            map_vista.put("LimiteDivision", wLimiteDivision.getText().trim());
+        }
+        if (cmbIndiceTrazas.getSelectionIndex() != -1) {
+            map_vista.put("IndiceTrazas", cmbIndiceTrazas.getItem(cmbIndiceTrazas.getSelectionIndex()));
+        }
+        if (cmbFormatoSalida.getSelectionIndex() != -1) {
+            map_vista.put("FormatoSalida", cmbFormatoSalida.getItem(cmbFormatoSalida.getSelectionIndex()));
+        }
+        if (cmbOmitirGlobales.getSelectionIndex() != -1) {
+            map_vista.put("OmitirGlobales", cmbOmitirGlobales.getItem(cmbOmitirGlobales.getSelectionIndex()));
+        }
+        if (cmbModoEscritura.getSelectionIndex() != -1) {
+            map_vista.put("ModoEscritura", cmbModoEscritura.getItem(cmbModoEscritura.getSelectionIndex()));
+        }
         if (this.wRutaSalida.getText() != null) {
             if (wRutaSalida.getText().startsWith("$")){
                 FileDialog dialog1 = new FileDialog( shell, SWT.SAVE );
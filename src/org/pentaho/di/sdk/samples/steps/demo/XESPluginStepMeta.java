@@ -79,6 +79,36 @@ public class XESPluginStepMeta extends BaseStepMeta implements StepMetaInterface
      */
     private static Class<?> PKG = XESPluginStepMeta.class; // for i18n purposes
 
+    //Modos de entrada que se pueden escoger en la vista
+    public static final String MODO_ENTRADA_MEMORIA = "Unsorted (in memory)";
+    public static final String MODO_ENTRADA_ORDENADA = "Sorted by case (streaming)";
+    public static final String MODO_ENTRADA_ORDENAMIENTO_EXTERNO = "Unsorted (external sort on disk)";
+    public static final String MODO_ENTRADA_PARTICIONES = "Unsorted (hash partitions on disk)";
+    public static final String MODO_ENTRADA_ALMACEN = "Unsorted (memory-mapped event store)";
+
+    //Formatos del XML de salida
+    public static final String FORMATO_XML_INDENTADO = "Indented";
+    public static final String FORMATO_XML_COMPACTO = "Compact (no indentation)";
+
+    //Compresion del fichero de salida
+    public static final String COMPRESION_NINGUNA = "None";
+    public static final String COMPRESION_GZIP = "GZIP (.xes.gz)";
+    public static final int NIVEL_COMPRESION_DEFECTO = 6;
+
+    //Formatos del log de salida
+    public static final String FORMATO_SALIDA_XES = "XES (XML)";
+    public static final String FORMATO_SALIDA_COLUMNAR = "Columnar binary (.xesc)";
+    public static final String FORMATO_SALIDA_XES_COLUMNAR = "XES and columnar binary";
+    public static final String FORMATO_SALIDA_CSV = "Event table (CSV)";
+    public static final String FORMATO_SALIDA_TSV = "Event table (TSV)";
+
+    //Atributos de evento iguales a su global
+    public static final String OMITIR_GLOBALES_NO = "Write every attribute";
+    public static final String OMITIR_GLOBALES_SI = "Omit values equal to the global default";
+
+    //Memoria por defecto para los modos que vuelcan eventos a disco, en MB
+    public static final int LIMITE_MEMORIA_MB_DEFECTO = 256;
+
     //Declaraciones para el manejo de datos
     private Map<String, String> mapa_vista; //Mapa que recibe los nombres de columnas escogidos
     private Map<Integer,XESPluginField> newatr; //Mapa que recibe los nuevos atributos
@@ -241,6 +271,51 @@ public class XESPluginStepMeta extends BaseStepMeta implements StepMetaInterface
         if (this.mapa_vista.get("EventoTotal") != null) {
             stringBuffer.append(XMLHandler.addTagValue("EventoTotal", this.mapa_vista.get("EventoTotal")));
         }
+        if (this.mapa_vista.get("EstrategiaID") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("EstrategiaID", this.mapa_vista.get("EstrategiaID")));
+        }
+        if (this.mapa_vista.get("ModoEntrada") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("ModoEntrada", this.mapa_vista.get("ModoEntrada")));
+        }
+        if (this.mapa_vista.get("LimiteMemoriaMB") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("LimiteMemoriaMB", this.mapa_vista.get("LimiteMemoriaMB")));
+        }
+        if (this.mapa_vista.get("DirectorioTemporal") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("DirectorioTemporal", this.mapa_vista.get("DirectorioTemporal")));
+        }
+        if (this.mapa_vista.get("Particiones") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("Particiones", this.mapa_vista.get("Particiones")));
+        }
+        if (this.mapa_vista.get("Hilos") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("Hilos", this.mapa_vista.get("Hilos")));
+        }
+        if (this.mapa_vista.get("FormatoXml") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("FormatoXml", this.mapa_vista.get("FormatoXml")));
+        }
+        if (this.mapa_vista.get("Compresion") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("Compresion", this.mapa_vista.get("Compresion")));
+        }
+        if (this.mapa_vista.get("NivelCompresion") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("NivelCompresion", this.mapa_vista.get("NivelCompresion")));
+        }
+        if (this.mapa_vista.get("DivisionSalida") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("DivisionSalida", this.mapa_vista.get("DivisionSalida")));
+        }
+        if (this.mapa_vista.get("LimiteDivision") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("LimiteDivision", this.mapa_vista.get("LimiteDivision")));
+        }
+        if (this.mapa_vista.get("IndiceTrazas") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("IndiceTrazas", this.mapa_vista.get("IndiceTrazas")));
+        }
+        if (this.mapa_vista.get("FormatoSalida") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("FormatoSalida", this.mapa_vista.get("FormatoSalida")));
+        }
+        if (this.mapa_vista.get("OmitirGlobales") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("OmitirGlobales", this.mapa_vista.get("OmitirGlobales")));
+        }
+        if (this.mapa_vista.get("ModoEscritura") != null) {
+            stringBuffer.append(XMLHandler.addTagValue("ModoEscritura", this.mapa_vista.get("ModoEscritura")));
+        }
         //Para guardar los nuevos atributos
         stringBuffer.append( "    <fields>" ).append( Const.CR );
         for (int k=0;k<cont;k++) {
@@ -324,6 +399,51 @@ public class XESPluginStepMeta extends BaseStepMeta implements StepMetaInterface
             if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "EventoTotal")) != null) {
                 this.mapa_vista.put("EventoTotal", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "EventoTotal")));
             }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "EstrategiaID")) != null) {
+                this.mapa_vista.put("EstrategiaID", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "EstrategiaID")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "ModoEntrada")) != null) {
+                this.mapa_vista.put("ModoEntrada", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "ModoEntrada")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "LimiteMemoriaMB")) != null) {
+                this.mapa_vista.put("LimiteMemoriaMB", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "LimiteMemoriaMB")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "DirectorioTemporal")) != null) {
+                this.mapa_vista.put("DirectorioTemporal", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "DirectorioTemporal")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "Particiones")) != null) {
+                this.mapa_vista.put("Particiones", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "Particiones")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "Hilos")) != null) {
+                this.mapa_vista.put("Hilos", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "Hilos")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "FormatoXml")) != null) {
+                this.mapa_vista.put("FormatoXml", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "FormatoXml")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "Compresion")) != null) {
+                this.mapa_vista.put("Compresion", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "Compresion")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "NivelCompresion")) != null) {
+                this.mapa_vista.put("NivelCompresion", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "NivelCompresion")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "DivisionSalida")) != null) {
+                this.mapa_vista.put("DivisionSalida", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "DivisionSalida")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "LimiteDivision")) != null) {
+                this.mapa_vista.put("LimiteDivision", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "LimiteDivision")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "IndiceTrazas")) != null) {
+                this.mapa_vista.put("IndiceTrazas", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "IndiceTrazas")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "FormatoSalida")) != null) {
+                this.mapa_vista.put("FormatoSalida", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "FormatoSalida")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "OmitirGlobales")) != null) {
+                this.mapa_vista.put("OmitirGlobales", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "OmitirGlobales")));
+            }
+            if (XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "ModoEscritura")) != null) {
+                this.mapa_vista.put("ModoEscritura", XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "ModoEscritura")));
+            }
             //Para leer los nuevos atributos
                 Node fields = XMLHandler.getSubNode( stepnode, "fields" );
                 int nrfields = XMLHandler.countNodes( fields, "field" );
@@ -403,6 +523,51 @@ public class XESPluginStepMeta extends BaseStepMeta implements StepMetaInterface
             if (this.mapa_vista.get("EventoTotal") != null) {
                rep.saveStepAttribute(id_transformation, id_step, "EventoTotal", this.mapa_vista.get("EventoTotal"));
             }
+            if (this.mapa_vista.get("EstrategiaID") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "EstrategiaID", this.mapa_vista.get("EstrategiaID"));
+            }
+            if (this.mapa_vista.get("ModoEntrada") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "ModoEntrada", this.mapa_vista.get("ModoEntrada"));
+            }
+            if (this.mapa_vista.get("LimiteMemoriaMB") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "LimiteMemoriaMB", this.mapa_vista.get("LimiteMemoriaMB"));
+            }
+            if (this.mapa_vista.get("DirectorioTemporal") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "DirectorioTemporal", this.mapa_vista.get("DirectorioTemporal"));
+            }
+            if (this.mapa_vista.get("Particiones") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "Particiones", this.mapa_vista.get("Particiones"));
+            }
+            if (this.mapa_vista.get("Hilos") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "Hilos", this.mapa_vista.get("Hilos"));
+            }
+            if (this.mapa_vista.get("FormatoXml") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "FormatoXml", this.mapa_vista.get("FormatoXml"));
+            }
+            if (this.mapa_vista.get("Compresion") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "Compresion", this.mapa_vista.get("Compresion"));
+            }
+            if (this.mapa_vista.get("NivelCompresion") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "NivelCompresion", this.mapa_vista.get("NivelCompresion"));
+            }
+            if (this.mapa_vista.get("DivisionSalida") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "DivisionSalida", this.mapa_vista.get("DivisionSalida"));
+            }
+            if (this.mapa_vista.get("LimiteDivision") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "LimiteDivision", this.mapa_vista.get("LimiteDivision"));
+            }
+            if (this.mapa_vista.get("IndiceTrazas") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "IndiceTrazas", this.mapa_vista.get("IndiceTrazas"));
+            }
+            if (this.mapa_vista.get("FormatoSalida") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "FormatoSalida", this.mapa_vista.get("FormatoSalida"));
+            }
+            if (this.mapa_vista.get("OmitirGlobales") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "OmitirGlobales", this.mapa_vista.get("OmitirGlobales"));
+            }
+            if (this.mapa_vista.get("ModoEscritura") != null) {
+                rep.saveStepAttribute(id_transformation, id_step, "ModoEscritura", this.mapa_vista.get("ModoEscritura"));
+            }
             //Para guardar los nuevos atributos
             for (int k=0; k<newatr.size();k++){
                 XESPluginField f = this.newatr.get(k);
@@ -483,6 +648,51 @@ public class XESPluginStepMeta extends BaseStepMeta implements StepMetaInterface
             if (rep.getStepAttributeString(id_step, "EventoTotal") != null) {
                 this.mapa_vista.put("EventoTotal", rep.getStepAttributeString(id_step, "EventoTotal"));
             }
+            if (rep.getStepAttributeString(id_step, "EstrategiaID") != null) {
+                this.mapa_vista.put("EstrategiaID", rep.getStepAttributeString(id_step, "EstrategiaID"));
+            }
+            if (rep.getStepAttributeString(id_step, "ModoEntrada") != null) {
+                this.mapa_vista.put("ModoEntrada", rep.getStepAttributeString(id_step, "ModoEntrada"));
+            }
+            if (rep.getStepAttributeString(id_step, "LimiteMemoriaMB") != null) {
+                this.mapa_vista.put("LimiteMemoriaMB", rep.getStepAttributeString(id_step, "LimiteMemoriaMB"));
+            }
+            if (rep.getStepAttributeString(id_step, "DirectorioTemporal") != null) {
+                this.mapa_vista.put("DirectorioTemporal", rep.getStepAttributeString(id_step, "DirectorioTemporal"));
+            }
+            if (rep.getStepAttributeString(id_step, "Particiones") != null) {
+                this.mapa_vista.put("Particiones", rep.getStepAttributeString(id_step, "Particiones"));
+            }
+            if (rep.getStepAttributeString(id_step, "Hilos") != null) {
+                this.mapa_vista.put("Hilos", rep.getStepAttributeString(id_step, "Hilos"));
+            }
+            if (rep.getStepAttributeString(id_step, "FormatoXml") != null) {
+                this.mapa_vista.put("FormatoXml", rep.getStepAttributeString(id_step, "FormatoXml"));
+            }
+            if (rep.getStepAttributeString(id_step, "Compresion") != null) {
+                this.mapa_vista.put("Compresion", rep.getStepAttributeString(id_step, "Compresion"));
+            }
+            if (rep.getStepAttributeString(id_step, "NivelCompresion") != null) {
+                this.mapa_vista.put("NivelCompresion", rep.getStepAttributeString(id_step, "NivelCompresion"));
+            }
+            if (rep.getStepAttributeString(id_step, "DivisionSalida") != null) {
+                this.mapa_vista.put("DivisionSalida", rep.getStepAttributeString(id_step, "DivisionSalida"));
+            }
+            if (rep.getStepAttributeString(id_step, "LimiteDivision") != null) {
+                this.mapa_vista.put("LimiteDivision", rep.getStepAttributeString(id_step, "LimiteDivision"));
+            }
+            if (rep.getStepAttributeString(id_step, "IndiceTrazas") != null) {
+                this.mapa_vista.put("IndiceTrazas", rep.getStepAttributeString(id_step, "IndiceTrazas"));
+            }
+            if (rep.getStepAttributeString(id_step, "FormatoSalida") != null) {
+                this.mapa_vista.put("FormatoSalida", rep.getStepAttributeString(id_step, "FormatoSalida"));
+            }
+            if (rep.getStepAttributeString(id_step, "OmitirGlobales") != null) {
+                this.mapa_vista.put("OmitirGlobales", rep.getStepAttributeString(id_step, "OmitirGlobales"));
+            }
+            if (rep.getStepAttributeString(id_step, "ModoEscritura") != null) {
+                this.mapa_vista.put("ModoEscritura", rep.getStepAttributeString(id_step, "ModoEscritura"));
+            }
             //Para leer los nuevos atributos
             int nrfields = rep.countNrStepAttributes( id_step, "fieldname" );
             for ( int i = 0; i < nrfields; i++ ) {
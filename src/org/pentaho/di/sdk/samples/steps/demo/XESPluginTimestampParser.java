@@ -0,0 +1,150 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Date;
+
+//Motor de interpretacion de marcas de tiempo. El formato configurado en la vista se compila una sola vez
+//en un DateTimeFormatter inmutable, por lo que una misma instancia se puede compartir entre hilos.
+
+public class XESPluginTimestampParser {
+
+    //Formatos especiales que no siguen la convencion de SimpleDateFormat
+    public static final String FORMATO_ISO8601 = "ISO-8601";
+    public static final String FORMATO_EPOCH_MILIS = "EPOCH (ms)";
+    public static final String FORMATO_EPOCH_SEGUNDOS = "EPOCH (s)";
+
+    private static final int TIPO_PATRON = 0;
+    private static final int TIPO_ISO8601 = 1;
+    private static final int TIPO_EPOCH_MILIS = 2;
+    private static final int TIPO_EPOCH_SEGUNDOS = 3;
+
+    private final String patron;
+    private final int tipo;
+    private final ZoneId zona;
+    private final DateTimeFormatter formateador; //null si el patron no se puede expresar con java.time
+
+    //SimpleDateFormat no es thread-safe, se mantiene uno por hilo solo como respaldo
+    private final ThreadLocal<SimpleDateFormat> respaldo = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat(patron);
+        }
+    };
+
+    public XESPluginTimestampParser(String patron) {
+        this.patron = patron;
+        this.zona = ZoneId.systemDefault();
+        if (FORMATO_ISO8601.equalsIgnoreCase(patron)) {
+            this.tipo = TIPO_ISO8601;
+            this.formateador = null;
+        } else if (FORMATO_EPOCH_MILIS.equalsIgnoreCase(patron)) {
+            this.tipo = TIPO_EPOCH_MILIS;
+            this.formateador = null;
+        } else if (FORMATO_EPOCH_SEGUNDOS.equalsIgnoreCase(patron)) {
+            this.tipo = TIPO_EPOCH_SEGUNDOS;
+            this.formateador = null;
+        } else {
+            this.tipo = TIPO_PATRON;
+            this.formateador = Compilar(patron);
+        }
+    }
+
+    //Se imita el comportamiento de SimpleDateFormat: resolucion permisiva y "hh" sin "a" se interpreta como AM
+    private static DateTimeFormatter Compilar(String patron) {
+        try {
+            DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder().appendPattern(patron);
+            String letras = patron.replaceAll("'[^']*'", "");
+            if ((letras.indexOf('h') >= 0 || letras.indexOf('K') >= 0) && letras.indexOf('a') < 0) {
+                builder.parseDefaulting(ChronoField.AMPM_OF_DAY, 0);
+            }
+            return builder.toFormatter().withResolverStyle(ResolverStyle.LENIENT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public String getPatron() {
+        return patron;
+    }
+
+    /**
+     * @return true si el formato espera un numero (milisegundos o segundos desde 1970)
+     */
+    public boolean esEpoch() {
+        return tipo == TIPO_EPOCH_MILIS || tipo == TIPO_EPOCH_SEGUNDOS;
+    }
+
+    /**
+     * Convierte un valor numerico segun el formato epoch configurado.
+     */
+    public Date desdeEpoch(long valor) {
+        return new Date(tipo == TIPO_EPOCH_SEGUNDOS ? valor * 1000L : valor);
+    }
+
+    public Date parse(String valor) throws ParseException {
+        switch (tipo) {
+            case TIPO_ISO8601:
+                return ParseISO(valor);
+            case TIPO_EPOCH_MILIS:
+            case TIPO_EPOCH_SEGUNDOS:
+                try {
+                    return desdeEpoch(Long.parseLong(valor.trim()));
+                } catch (NumberFormatException e) {
+                    throw new ParseException(valor, 0);
+                }
+            default:
+                if (formateador != null) {
+                    try {
+                        TemporalAccessor t = formateador.parse(valor);
+                        LocalDate fecha = t.query(TemporalQueries.localDate());
+                        if (fecha != null) {
+                            LocalTime hora = t.query(TemporalQueries.localTime());
+                            ZoneId zonaValor = t.query(TemporalQueries.zone());
+                            LocalDateTime fechaHora = fecha.atTime(hora == null ? LocalTime.MIDNIGHT : hora);
+                            return Date.from(fechaHora.atZone(zonaValor == null ? zona : zonaValor).toInstant());
+                        }
+                    } catch (DateTimeParseException | ArithmeticException e) {
+                        //se delega en SimpleDateFormat, que es mas permisivo
+                    }
+                }
+                return respaldo.get().parse(valor);
+        }
+    }
+
+    //ISO-8601 con o sin zona horaria; se admite el espacio como separador entre fecha y hora
+    private Date ParseISO(String valor) throws ParseException {
+        String texto = valor.trim();
+        try {
+            if (texto.length() == 10) {
+                return Date.from(LocalDate.parse(texto).atStartOfDay(zona).toInstant());
+            }
+            if (texto.length() > 10 && texto.charAt(10) == ' ') {
+                texto = texto.substring(0, 10) + 'T' + texto.substring(11);
+            }
+            if (texto.endsWith("Z")) {
+                return Date.from(Instant.parse(texto));
+            }
+            TemporalAccessor t = DateTimeFormatter.ISO_DATE_TIME.parse(texto);
+            if (t.isSupported(ChronoField.OFFSET_SECONDS)) {
+                return Date.from(OffsetDateTime.from(t).toInstant());
+            }
+            return Date.from(LocalDateTime.from(t).atZone(zona).toInstant());
+        } catch (RuntimeException e) {
+            throw new ParseException(valor, 0);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeMap;
+import org.deckfour.xes.model.XAttributeTimestamp;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.impl.XTraceImpl;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+//Registro de un caso: la traza en memoria junto con todo el estado del caso (identificador entero,
+//instancia de proceso, costo total y atributos de tipo Case), para no repartirlo en mapas auxiliares.
+//La traza acumula los eventos en el orden de llegada y los ordena una sola vez al final.
+//Mientras las marcas de tiempo llegan en orden no hay nada que hacer; basta con una bandera que indica
+//si alguna llego desordenada. El ordenamiento es estable, por lo que los eventos con la misma marca
+//de tiempo conservan el orden de llegada, igual que con insertOrdered.
+//Con limite de memoria, los eventos de una traza se pueden desalojar a disco (su cadena en el almacen de eventos)
+//y se vuelven a anteponer antes de escribirla.
+
+public class XESPluginTrace extends XTraceImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    //orden por marca de tiempo; los eventos sin marca se consideran anteriores a cualquier otro
+    private static final Comparator<XEvent> POR_MARCA_TIEMPO = new Comparator<XEvent>() {
+        @Override
+        public int compare(XEvent a, XEvent b) {
+            return Long.compare(MarcaTiempo(a), MarcaTiempo(b));
+        }
+    };
+
+    private long ultimaMarca;
+    private boolean ordenada;
+
+    private int id; //posicion de la traza en el indice de casos
+    private String caso; //valor de la instancia de proceso, sera el concept:name de la traza
+    private double costoTotal;
+    private boolean conCosto;
+    private XAttributeMap atributosCaso; //nuevos atributos de tipo Case, null si no hay
+
+    private long bytes; //tamaño aproximado de los eventos que estan en memoria
+    private XESPluginEventStore.Cadena desalojados; //eventos desalojados a disco, null si nunca se desalojo
+
+    public XESPluginTrace(XAttributeMap atributos) {
+        super(atributos);
+        this.ultimaMarca = Long.MIN_VALUE;
+        this.ordenada = true;
+        this.id = -1;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getCaso() {
+        return caso;
+    }
+
+    public void setCaso(String caso) {
+        this.caso = caso;
+    }
+
+    /**
+     * @return true si alguna fila del caso trajo el costo total de la traza
+     */
+    public boolean tieneCosto() {
+        return conCosto;
+    }
+
+    public double getCostoTotal() {
+        return costoTotal;
+    }
+
+    //el ultimo valor recibido es el que se queda
+    public void setCostoTotal(double costoTotal) {
+        this.costoTotal = costoTotal;
+        this.conCosto = true;
+    }
+
+    public XAttributeMap getAtributosCaso() {
+        return atributosCaso;
+    }
+
+    public void setAtributosCaso(XAttributeMap atributosCaso) {
+        this.atributosCaso = atributosCaso;
+    }
+
+    /**
+     * Agrega el evento al final de la traza.
+     *
+     * @param marca marca de tiempo del evento, o null si el evento no tiene
+     */
+    public void agregar(XEvent evento, Date marca) {
+        add(evento);
+        this.bytes += tamanoEvento(evento);
+        if (marca != null) {
+            long valor = marca.getTime();
+            if (valor < this.ultimaMarca) {
+                this.ordenada = false;
+            } else {
+                this.ultimaMarca = valor;
+            }
+        }
+    }
+
+    /**
+     * @return bytes aproximados que ocupan en el heap los eventos de la traza que estan en memoria
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public XESPluginEventStore.Cadena getDesalojados() {
+        return desalojados;
+    }
+
+    public void setDesalojados(XESPluginEventStore.Cadena desalojados) {
+        this.desalojados = desalojados;
+    }
+
+    /**
+     * Suelta los eventos en memoria, una vez que ya se copiaron a disco.
+     */
+    public void descargar() {
+        clear();
+        this.bytes = 0;
+    }
+
+    /**
+     * Pone delante los eventos que habian llegado antes (los recargados de disco); la traza se vuelve a ordenar.
+     */
+    public void anteponer(List<XEvent> anteriores) {
+        addAll(0, anteriores);
+        for (XEvent evento : anteriores) {
+            this.bytes += tamanoEvento(evento);
+        }
+        this.ordenada = false;
+    }
+
+    public boolean isOrdenada() {
+        return ordenada;
+    }
+
+    /**
+     * Ordena los eventos por marca de tiempo si alguno llego desordenado.
+     */
+    public void ordenar() {
+        if (!this.ordenada) {
+            sort(POR_MARCA_TIEMPO);
+            this.ordenada = true;
+        }
+    }
+
+    /**
+     * @return la marca de tiempo mas temprana de la traza ya ordenada, o null si ningun evento tiene marca
+     */
+    public Date getPrimeraMarca() {
+        for (XEvent evento : this) {
+            long marca = MarcaTiempo(evento);
+            if (marca != Long.MIN_VALUE) {
+                return new Date(marca);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return la marca de tiempo mas tardia de la traza ya ordenada, o null si ningun evento tiene marca
+     */
+    public Date getUltimaMarca() {
+        long marca = isEmpty() ? Long.MIN_VALUE : MarcaTiempo(get(size() - 1));
+        return marca == Long.MIN_VALUE ? null : new Date(marca);
+    }
+
+    //tamaño aproximado de un evento en el heap: el objeto, su XID y su mapa con los atributos
+    public static long tamanoEvento(XEvent evento) {
+        return 96 + 48L * evento.getAttributes().size();
+    }
+
+    private static long MarcaTiempo(XEvent evento) {
+        XAttribute atributo = evento.getAttributes().get("time:timestamp");
+        return atributo instanceof XAttributeTimestamp ? ((XAttributeTimestamp) atributo).getValueMillis() : Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,293 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+//Indice binario de las trazas de un fichero XES, escrito al lado del fichero (out.xes.idx). Por cada traza guarda
+//su instancia de proceso (concept:name), donde empieza y cuanto ocupa dentro del XML, la cantidad de eventos y
+//la primera y ultima marca de tiempo, asi un caso se puede leer sin recorrer el fichero entero. Si el XES esta
+//comprimido, las posiciones son del XML sin comprimir y el indice trae ademas donde empieza cada miembro gzip.
+//
+//Formato (DataOutput): MAGICO, VERSION; las entradas en el orden del fichero (caso, posicion, longitud, eventos,
+//primera marca, ultima marca, Long.MIN_VALUE si no hay); cada miembro gzip como posicion sin comprimir y
+//posicion comprimida; y al final la cantidad de entradas, la cantidad de miembros y MAGICO.
+
+public class XESPluginTraceIndex {
+
+    //Opciones que se pueden escoger en la vista
+    public static final String SIN_INDICE = "No";
+    public static final String CON_INDICE = "Binary sidecar (.idx)";
+
+    public static final String EXTENSION = ".idx";
+
+    private static final int MAGICO = 0x58455349; //"XESI"
+    private static final int VERSION = 1;
+    private static final long SIN_MARCA = Long.MIN_VALUE;
+
+    //Ubicacion y resumen de una traza dentro del XES
+    public static class Entrada {
+        private final String caso;
+        private final int eventos;
+        private final long primeraMarca;
+        private final long ultimaMarca;
+        private long posicion;
+        private long longitud;
+
+        public Entrada(String caso, int eventos, long primeraMarca, long ultimaMarca) {
+            this.caso = caso;
+            this.eventos = eventos;
+            this.primeraMarca = primeraMarca;
+            this.ultimaMarca = ultimaMarca;
+        }
+
+        /**
+         * Resumen de una traza ya ordenada; la ubicacion se completa al escribirla.
+         */
+        public static Entrada de(XESPluginTrace traza) {
+            Date primera = traza.getPrimeraMarca();
+            Date ultima = traza.getUltimaMarca();
+            return new Entrada(traza.getCaso(), traza.size(),
+                    primera == null ? SIN_MARCA : primera.getTime(), ultima == null ? SIN_MARCA : ultima.getTime());
+        }
+
+        public void ubicar(long posicion, long longitud) {
+            this.posicion = posicion;
+            this.longitud = longitud;
+        }
+
+        public String getCaso() {
+            return caso;
+        }
+
+        public int getEventos() {
+            return eventos;
+        }
+
+        /**
+         * @return la primera marca de tiempo, o null si la traza no tiene
+         */
+        public Date getPrimeraMarca() {
+            return this.primeraMarca == SIN_MARCA ? null : new Date(this.primeraMarca);
+        }
+
+        /**
+         * @return la ultima marca de tiempo, o null si la traza no tiene
+         */
+        public Date getUltimaMarca() {
+            return this.ultimaMarca == SIN_MARCA ? null : new Date(this.ultimaMarca);
+        }
+
+        /**
+         * @return posicion de la etiqueta trace dentro del XML sin comprimir
+         */
+        public long getPosicion() {
+            return posicion;
+        }
+
+        public long getLongitud() {
+            return longitud;
+        }
+    }
+
+    //--- escritura ---
+
+    private final FileOutputStream fichero;
+    private final DataOutputStream salida;
+    private int entradas;
+
+    /**
+     * @param archivo fichero del indice; se sobrescribe si existe
+     */
+    public XESPluginTraceIndex(File archivo) throws IOException {
+        this.fichero = new FileOutputStream(archivo);
+        this.salida = new DataOutputStream(new BufferedOutputStream(this.fichero, 1 << 16));
+        this.salida.writeInt(MAGICO);
+        this.salida.writeInt(VERSION);
+    }
+
+    public void agregar(Entrada entrada) throws IOException {
+        XESPluginEventCodec.escribirTexto(this.salida, entrada.caso);
+        this.salida.writeLong(entrada.posicion);
+        this.salida.writeLong(entrada.longitud);
+        this.salida.writeInt(entrada.eventos);
+        this.salida.writeLong(entrada.primeraMarca);
+        this.salida.writeLong(entrada.ultimaMarca);
+        this.entradas++;
+    }
+
+    /**
+     * Escribe el pie y cierra el indice.
+     *
+     * @param miembros inicio de cada miembro gzip como {sin comprimir, comprimido}, o null si el XES no esta comprimido
+     */
+    public void cerrar(List<long[]> miembros) throws IOException {
+        try {
+            if (miembros != null) {
+                for (long[] miembro : miembros) {
+                    this.salida.writeLong(miembro[0]);
+                    this.salida.writeLong(miembro[1]);
+                }
+            }
+            this.salida.writeInt(this.entradas);
+            this.salida.writeInt(miembros == null ? 0 : miembros.size());
+            this.salida.writeInt(MAGICO);
+        } finally {
+            this.salida.close();
+        }
+    }
+
+    /**
+     * Cierra el fichero sin volcar lo pendiente ni escribir el pie; el indice queda incompleto.
+     */
+    public void abortar() throws IOException {
+        this.fichero.close();
+    }
+
+    //--- lectura ---
+
+    //Indice ya escrito, para buscar casos y leer sus trazas del XES
+    public static class Lectura {
+        private final List<Entrada> entradas;
+        private final long[][] miembros;
+        private Map<String, Entrada> porCaso;
+
+        private Lectura(List<Entrada> entradas, long[][] miembros) {
+            this.entradas = entradas;
+            this.miembros = miembros;
+        }
+
+        /**
+         * @return las entradas en el orden en que estan las trazas en el fichero
+         */
+        public List<Entrada> getEntradas() {
+            return Collections.unmodifiableList(entradas);
+        }
+
+        public boolean isComprimido() {
+            return this.miembros.length > 0;
+        }
+
+        /**
+         * @return la entrada del caso, o null si el caso no esta en el fichero
+         */
+        public Entrada buscar(String caso) {
+            if (this.porCaso == null) {
+                this.porCaso = new HashMap<>(this.entradas.size() * 2);
+                for (Entrada entrada : this.entradas) {
+                    this.porCaso.put(entrada.caso, entrada);
+                }
+            }
+            return this.porCaso.get(caso);
+        }
+
+        /**
+         * @return el XML de la traza, desde su etiqueta trace hasta el cierre, en UTF-8
+         */
+        public byte[] leerTraza(File xes, Entrada entrada) throws IOException {
+            if (entrada.longitud > Integer.MAX_VALUE - 8) {
+                throw new IOException("Trace " + entrada.caso + " is too large to read at once");
+            }
+            return Leer(xes, entrada.posicion, (int) entrada.longitud);
+        }
+
+        /**
+         * @return el XML desde el inicio del fichero hasta la primera traza (declaracion, log, extensiones,
+         * globales, clasificadores y atributos del log), o null si el fichero no tiene trazas
+         */
+        public byte[] leerCabecera(File xes) throws IOException {
+            if (this.entradas.isEmpty()) {
+                return null;
+            }
+            if (this.entradas.get(0).posicion > Integer.MAX_VALUE - 8) {
+                throw new IOException(xes + " has a header too large to read at once");
+            }
+            return Leer(xes, 0, (int) this.entradas.get(0).posicion);
+        }
+
+        private byte[] Leer(File xes, long posicion, int longitud) throws IOException {
+            byte[] bytes = new byte[longitud];
+            if (!isComprimido()) {
+                try (RandomAccessFile acceso = new RandomAccessFile(xes, "r")) {
+                    acceso.seek(posicion);
+                    acceso.readFully(bytes);
+                }
+                return bytes;
+            }
+            //se descomprime desde el ultimo miembro que empieza antes de la posicion
+            int m = 0;
+            while (m + 1 < this.miembros.length && this.miembros[m + 1][0] <= posicion) {
+                m++;
+            }
+            try (FileInputStream archivo = new FileInputStream(xes)) {
+                archivo.getChannel().position(this.miembros[m][1]);
+                DataInputStream entradaXml = new DataInputStream(new GZIPInputStream(new BufferedInputStream(archivo, 1 << 16), 1 << 16));
+                Saltar(entradaXml, posicion - this.miembros[m][0]);
+                entradaXml.readFully(bytes);
+            }
+            return bytes;
+        }
+
+        private static void Saltar(InputStream entrada, long bytes) throws IOException {
+            while (bytes > 0) {
+                long n = entrada.skip(bytes);
+                if (n <= 0) {
+                    throw new EOFException("Index points past the end of the XES file");
+                }
+                bytes -= n;
+            }
+        }
+    }
+
+    /**
+     * Lee un indice escrito por el paso.
+     */
+    public static Lectura leer(File archivo) throws IOException {
+        try (RandomAccessFile acceso = new RandomAccessFile(archivo, "r")) {
+            if (acceso.length() < 20) {
+                throw new IOException(archivo + " is not an XES trace index");
+            }
+            acceso.seek(acceso.length() - 12);
+            int cantidad = acceso.readInt();
+            long[][] miembros = new long[acceso.readInt()][];
+            if (acceso.readInt() != MAGICO) {
+                throw new IOException(archivo + " is not an XES trace index");
+            }
+            acceso.seek(acceso.length() - 12 - 16L * miembros.length);
+            for (int i = 0; i < miembros.length; i++) {
+                miembros[i] = new long[]{acceso.readLong(), acceso.readLong()};
+            }
+
+            acceso.seek(0);
+            DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(acceso.getFD()), 1 << 16));
+            if (entrada.readInt() != MAGICO || entrada.readInt() != VERSION) {
+                throw new IOException(archivo + " has an unsupported index version");
+            }
+            List<Entrada> entradas = new ArrayList<>(cantidad);
+            for (int i = 0; i < cantidad; i++) {
+                String caso = XESPluginEventCodec.leerTexto(entrada);
+                long posicion = entrada.readLong();
+                long longitud = entrada.readLong();
+                Entrada e = new Entrada(caso, entrada.readInt(), entrada.readLong(), entrada.readLong());
+                e.ubicar(posicion, longitud);
+                entradas.add(e);
+            }
+            return new Lectura(entradas, miembros);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.extension.XExtension;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.impl.XAttributeLiteralImpl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+//Diccionario de valores de un atributo literal (actividad, ciclo de vida, recurso, rol, grupo, moneda...).
+//Estos atributos tienen muy pocos valores distintos, por lo que cada par (clave, valor) se crea una sola vez
+//y la misma instancia de XAttribute se comparte entre todos los eventos que la usan.
+//Los atributos compartidos no deben modificarse despues de creados. Se cuenta cuantas veces se pide cada valor,
+//para poder declarar como global por defecto el mas frecuente.
+
+public class XESPluginValueDictionary {
+
+    //Limite de valores distintos por clave; por encima de el se deja de compartir para no retener memoria
+    //cuando la columna resulta tener alta cardinalidad
+    public static final int MAX_VALORES = 65536;
+
+    private final String clave;
+    private final XExtension extension;
+    private final Map<String, Valor> valores;
+
+    //Atributo compartido de un valor y cuantas veces se ha pedido
+    private static class Valor {
+        final XAttribute atributo;
+        long usos;
+
+        Valor(XAttribute atributo) {
+            this.atributo = atributo;
+        }
+    }
+
+    public XESPluginValueDictionary(String clave, XExtension extension) {
+        this.clave = clave.intern();
+        this.extension = extension;
+        this.valores = new HashMap<>();
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    /**
+     * @return el atributo compartido para el valor, o uno nuevo si el diccionario ya esta lleno
+     */
+    public XAttribute obtener(String valor) {
+        Valor compartido = this.valores.get(valor);
+        if (compartido == null) {
+            XAttribute atributo = new XAttributeLiteralImpl(this.clave, valor, this.extension);
+            if (this.valores.size() >= MAX_VALORES) {
+                return atributo;
+            }
+            compartido = new Valor(atributo);
+            this.valores.put(valor, compartido);
+        }
+        compartido.usos++;
+        return compartido.atributo;
+    }
+
+    /**
+     * @return el atributo compartido del valor mas pedido (el menor valor si hay empate), o null si no se pidio
+     * ninguno. Los valores que llegaron con el diccionario lleno no se cuentan.
+     */
+    public XAttribute masFrecuente() {
+        Map.Entry<String, Valor> mejor = null;
+        for (Map.Entry<String, Valor> entrada : this.valores.entrySet()) {
+            if (mejor == null || entrada.getValue().usos > mejor.getValue().usos
+                    || (entrada.getValue().usos == mejor.getValue().usos && entrada.getKey().compareTo(mejor.getKey()) < 0)) {
+                mejor = entrada;
+            }
+        }
+        return mejor == null ? null : mejor.getValue().atributo;
+    }
+
+    public int size() {
+        return this.valores.size();
+    }
+}
@@ -0,0 +1,101 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Date;
+
+//Extraccion tipada de valores de una fila usando los metadatos de la columna de entrada.
+//Los numeros, fechas y booleanos se leen en su tipo nativo, sin pasar por un String intermedio;
+//solo las columnas de texto se interpretan a mano, igual que se hacia antes con DescifrarPalabra.
+//Todos los metodos devuelven null cuando la celda es nula.
+
+public final class XESPluginValueReader {
+
+    private XESPluginValueReader() {
+    }
+
+    public static String getString(ValueMetaInterface meta, Object valor) throws KettleValueException {
+        if (valor == null || meta.isNull(valor)) {
+            return null;
+        }
+        if (valor instanceof String) {
+            return (String) valor;
+        }
+        if (meta.isStorageBinaryString() && valor instanceof byte[]) {
+            //entradas con conversion perezosa (CSV, Text file input): se decodifica una sola vez con la codificacion del origen
+            ValueMetaInterface almacenamiento = meta.getStorageMetadata();
+            String codificacion = almacenamiento != null ? almacenamiento.getStringEncoding() : meta.getStringEncoding();
+            if (codificacion == null) {
+                codificacion = meta.getStringEncoding();
+            }
+            if (codificacion != null) {
+                try {
+                    return new String((byte[]) valor, codificacion);
+                } catch (UnsupportedEncodingException e) {
+                    throw new KettleValueException("Unsupported encoding " + codificacion + " for field " + meta.getName(), e);
+                }
+            }
+            return new String((byte[]) valor);
+        }
+        return String.valueOf(meta.convertToNormalStorageType(valor));
+    }
+
+    public static Long getInteger(ValueMetaInterface meta, Object valor) throws KettleValueException {
+        if (valor == null || meta.isNull(valor)) {
+            return null;
+        }
+        if (valor instanceof Long) {
+            return (Long) valor;
+        }
+        if (meta.isString()) {
+            String texto = getString(meta, valor);
+            return esVacio(texto) ? null : Long.parseLong(texto);
+        }
+        return meta.getInteger(valor);
+    }
+
+    public static Double getNumber(ValueMetaInterface meta, Object valor) throws KettleValueException {
+        if (valor == null || meta.isNull(valor)) {
+            return null;
+        }
+        if (valor instanceof Double) {
+            return (Double) valor;
+        }
+        if (meta.isString()) {
+            String texto = getString(meta, valor);
+            return esVacio(texto) ? null : Double.parseDouble(texto);
+        }
+        return meta.getNumber(valor);
+    }
+
+    public static Boolean getBoolean(ValueMetaInterface meta, Object valor) throws KettleValueException {
+        if (valor == null || meta.isNull(valor)) {
+            return null;
+        }
+        if (valor instanceof Boolean) {
+            return (Boolean) valor;
+        }
+        if (meta.isString()) {
+            String texto = getString(meta, valor);
+            return esVacio(texto) ? null : Boolean.parseBoolean(texto);
+        }
+        return meta.getBoolean(valor);
+    }
+
+    /**
+     * @return la fecha si la columna es de tipo Date/Timestamp, null en otro caso (hay que interpretar el texto)
+     */
+    public static Date getDate(ValueMetaInterface meta, Object valor) throws KettleValueException {
+        if (valor == null || !meta.isDate() || meta.isNull(valor)) {
+            return null;
+        }
+        return meta.getDate(valor);
+    }
+
+    //Texto vacio o "null" se consideran celdas sin valor, igual que en la version basada en cadenas
+    public static boolean esVacio(String valor) {
+        return valor == null || valor.isEmpty() || valor.equals("null");
+    }
+}
@@ -0,0 +1,501 @@
+package org.pentaho.di.sdk.samples.steps.demo;
+
+import org.deckfour.xes.classification.XEventAttributeClassifier;
+import org.deckfour.xes.classification.XEventClassifier;
+import org.deckfour.xes.extension.XExtension;
+import org.deckfour.xes.model.XAttribute;
+import org.deckfour.xes.model.XAttributeBoolean;
+import org.deckfour.xes.model.XAttributeCollection;
+import org.deckfour.xes.model.XAttributeContainer;
+import org.deckfour.xes.model.XAttributeContinuous;
+import org.deckfour.xes.model.XAttributeDiscrete;
+import org.deckfour.xes.model.XAttributeID;
+import org.deckfour.xes.model.XAttributeList;
+import org.deckfour.xes.model.XAttributeLiteral;
+import org.deckfour.xes.model.XAttributeTimestamp;
+import org.deckfour.xes.model.XEvent;
+import org.deckfour.xes.model.XLog;
+import org.deckfour.xes.model.XTrace;
+import org.deckfour.xes.util.XTokenHelper;
+import org.deckfour.xes.util.XsDateTimeConversion;
+import org.deckfour.xes.util.XsDateTimeConversionJava7;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Escritor XES por partes: primero la cabecera del log (extensiones, globales, clasificadores y atributos),
+//despues cada traza en cuanto esta lista, y por ultimo el cierre. No construye el arbol de Spex: escribe los
+//bytes UTF-8 directamente en un buffer grande que se vuelca al canal de salida, con tablas de escape
+//precalculadas y las claves de los atributos ya codificadas. Con indentacion produce exactamente el mismo XML
+//que XesXmlSerializer (mismas reglas de Spex: los valores se recortan y los vacios no se escriben),
+//por lo que el resultado se lee con XesXmlParser igual que antes.
+
+public class XESPluginXesWriter {
+
+    private static final int TAMANO_BUFFER = 1 << 20;
+    private static final int TAMANO_BUFFER_FRAGMENTO = 1 << 16;
+
+    //escape de los caracteres ASCII, null si el caracter se escribe tal cual
+    private static final byte[][] ESCAPES = new byte[128][];
+
+    static {
+        ESCAPES['<'] = Ascii("&lt;");
+        ESCAPES['>'] = Ascii("&gt;");
+        ESCAPES['"'] = Ascii("&quot;");
+        ESCAPES['\''] = Ascii("&apos;");
+        ESCAPES['&'] = Ascii("&amp;");
+    }
+
+    private static final byte[] CABECERA_XML = Ascii("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+    private static final byte[] INICIO_COMENTARIO = Ascii("<!-- ");
+    private static final byte[] FIN_COMENTARIO = Ascii(" -->\n");
+    private static final byte[] FIN_VACIA = Ascii("/>\n");
+    private static final byte[] FIN_APERTURA = Ascii(">\n");
+    private static final byte[] VALOR = Ascii(" value=\"");
+
+    private final boolean indentar;
+    private final XsDateTimeConversion conversionFechas;
+    private final Map<String, byte[]> claves; //" key=\"...\"" ya escapado y codificado, por clave
+    private Map<String, XAttribute> porDefecto; //globales de evento que no se repiten en los eventos, null si se escribe todo
+
+    private WritableByteChannel canal;
+    private ByteArrayOutputStream memoria; //solo en los fragmentadores
+    private final byte[] buffer;
+    private final ByteBuffer vista;
+    private int usados;
+    private long volcados;
+    private int trazasEscritas;
+
+    //la misma marca de tiempo se repite mucho (eventos simultaneos, fechas globales), se recuerda la ultima
+    private long ultimaFecha = Long.MIN_VALUE;
+    private String ultimaFechaTexto;
+
+    public XESPluginXesWriter() {
+        this(true);
+    }
+
+    /**
+     * @param indentar false para no escribir la indentacion (tabuladores) de cada linea
+     */
+    public XESPluginXesWriter(boolean indentar) {
+        this(indentar, TAMANO_BUFFER);
+    }
+
+    private XESPluginXesWriter(boolean indentar, int tamanoBuffer) {
+        this.indentar = indentar;
+        this.conversionFechas = new XsDateTimeConversionJava7();
+        this.claves = new HashMap<>();
+        this.buffer = new byte[tamanoBuffer];
+        this.vista = ByteBuffer.wrap(this.buffer);
+    }
+
+    /**
+     * Escritor en memoria con las mismas opciones, para serializar trazas en otro hilo. Cada hilo necesita
+     * el suyo: las caches de claves y fechas no se comparten.
+     */
+    public XESPluginXesWriter fragmentador() {
+        XESPluginXesWriter fragmentador = new XESPluginXesWriter(this.indentar, TAMANO_BUFFER_FRAGMENTO);
+        fragmentador.memoria = new ByteArrayOutputStream(TAMANO_BUFFER_FRAGMENTO);
+        fragmentador.canal = Channels.newChannel(fragmentador.memoria);
+        fragmentador.porDefecto = this.porDefecto;
+        return fragmentador;
+    }
+
+    /**
+     * Serializa las trazas igual que escribirTraza, pero devuelve los bytes en vez de escribirlos.
+     * Solo para los escritores creados con fragmentador().
+     *
+     * @param finales se llena con la posicion en la que termina cada traza dentro del fragmento
+     */
+    public byte[] serializar(List<? extends XTrace> trazas, int[] finales) throws IOException {
+        this.memoria.reset();
+        this.usados = 0;
+        this.volcados = 0;
+        for (int i = 0; i < trazas.size(); i++) {
+            escribirTraza(trazas.get(i));
+            finales[i] = (int) getBytesEscritos();
+        }
+        if (this.memoria.size() == 0) {
+            //el lote cupo en el buffer, no hace falta pasar por la memoria intermedia
+            return Arrays.copyOf(this.buffer, this.usados);
+        }
+        Volcar();
+        return this.memoria.toByteArray();
+    }
+
+    /**
+     * Desde ahora no se escriben los atributos de evento iguales a su global (misma clave, tipo y valor, sin
+     * atributos anidados): segun XES, un evento sin el atributo toma el valor global. Las marcas de tiempo
+     * se escriben siempre.
+     */
+    public void omitirGlobales(List<XAttribute> globales) {
+        Map<String, XAttribute> porDefecto = new HashMap<>();
+        for (XAttribute global : globales) {
+            if (!(global instanceof XAttributeTimestamp)) {
+                porDefecto.put(global.getKey(), global);
+            }
+        }
+        this.porDefecto = porDefecto.isEmpty() ? null : porDefecto;
+    }
+
+    /**
+     * Escribe la cabecera del log. Las trazas que tenga el log no se escriben.
+     */
+    public void abrir(XLog cabecera, OutputStream salida) throws IOException {
+        //los ficheros se escriben por su canal, sin la copia intermedia de OutputStream
+        this.canal = salida instanceof FileOutputStream ? ((FileOutputStream) salida).getChannel() : Channels.newChannel(salida);
+        this.usados = 0;
+        this.volcados = 0;
+        this.trazasEscritas = 0;
+
+        Escribir(CABECERA_XML);
+        Comentario("This file has been generated with the OpenXES library. It conforms");
+        Comentario("to the XML serialization of the XES standard for log storage and");
+        Comentario("management.");
+        Comentario("XES standard version: 1.0");
+        Comentario("OpenXES library version: 1.0RC7");
+        Comentario("OpenXES is available from http://www.openxes.org/");
+        AbrirEtiqueta(0, "log");
+        Atributo("xes.version", "1.0");
+        Atributo("xes.features", "nested-attributes");
+        Atributo("openxes.version", "1.0RC7");
+        Escribir(FIN_APERTURA);
+        for (XExtension extension : cabecera.getExtensions()) {
+            AbrirEtiqueta(1, "extension");
+            Atributo("name", extension.getName());
+            Atributo("prefix", extension.getPrefix());
+            Atributo("uri", extension.getUri().toString());
+            Escribir(FIN_VACIA);
+        }
+        Globales("trace", cabecera.getGlobalTraceAttributes());
+        Globales("event", cabecera.getGlobalEventAttributes());
+        for (XEventClassifier clasificador : cabecera.getClassifiers()) {
+            if (clasificador instanceof XEventAttributeClassifier) {
+                XEventAttributeClassifier clasificadorAtributos = (XEventAttributeClassifier) clasificador;
+                AbrirEtiqueta(1, "classifier");
+                Atributo("name", clasificadorAtributos.name());
+                Atributo("keys", XTokenHelper.formatTokenString(Arrays.asList(clasificadorAtributos.getDefiningAttributeKeys())));
+                Escribir(FIN_VACIA);
+            }
+        }
+        Atributos(1, cabecera.getAttributes().values());
+    }
+
+    public void escribirTraza(XTrace traza) throws IOException {
+        Collection<XAttribute> atributos = traza.getAttributes().values();
+        AbrirEtiqueta(1, "trace");
+        if (atributos.isEmpty() && traza.isEmpty()) {
+            Escribir(FIN_VACIA);
+        } else {
+            Escribir(FIN_APERTURA);
+            Atributos(2, atributos);
+            for (XEvent evento : traza) {
+                Collection<XAttribute> atributosEvento = evento.getAttributes().values();
+                AbrirEtiqueta(2, "event");
+                if (atributosEvento.isEmpty() || (this.porDefecto != null && SoloGlobales(atributosEvento))) {
+                    Escribir(FIN_VACIA);
+                } else {
+                    Escribir(FIN_APERTURA);
+                    Atributos(3, atributosEvento, this.porDefecto);
+                    CerrarEtiqueta(2, "event");
+                }
+            }
+            CerrarEtiqueta(1, "trace");
+        }
+        this.trazasEscritas++;
+    }
+
+    /**
+     * Escribe trazas ya serializadas por un fragmentador.
+     *
+     * @param desde  inicio de la primera traza dentro del fragmento
+     * @param hasta  fin de la ultima traza dentro del fragmento
+     * @param trazas cantidad de trazas entre desde y hasta
+     */
+    public void escribirFragmento(byte[] fragmento, int desde, int hasta, int trazas) throws IOException {
+        Escribir(fragmento, desde, hasta - desde);
+        this.trazasEscritas += trazas;
+    }
+
+    public int getTrazasEscritas() {
+        return trazasEscritas;
+    }
+
+    /**
+     * @return bytes escritos hasta ahora, incluidos los que aun estan en el buffer
+     */
+    public long getBytesEscritos() {
+        return this.volcados + this.usados;
+    }
+
+    /**
+     * Cierra el log y el canal de salida.
+     */
+    public void cerrar() throws IOException {
+        if (this.canal != null) {
+            try {
+                CerrarEtiqueta(0, "log");
+                Volcar();
+            } finally {
+                this.canal.close();
+                this.canal = null;
+            }
+        }
+    }
+
+    /**
+     * Cierra el canal de salida sin volcar lo pendiente ni escribir el cierre del log.
+     */
+    public void abortar() throws IOException {
+        if (this.canal != null) {
+            this.usados = 0;
+            try {
+                this.canal.close();
+            } finally {
+                this.canal = null;
+            }
+        }
+    }
+
+    private void Globales(String ambito, List<XAttribute> globales) throws IOException {
+        if (globales.size() > 0) {
+            AbrirEtiqueta(1, "global");
+            Atributo("scope", ambito);
+            Escribir(FIN_APERTURA);
+            Atributos(2, globales);
+            CerrarEtiqueta(1, "global");
+        }
+    }
+
+    private void Atributos(int nivel, Collection<XAttribute> atributos) throws IOException {
+        Atributos(nivel, atributos, null);
+    }
+
+    //Mismo recorrido que XesXmlSerializer.addAttributes; se saltan los iguales a su global de porDefecto
+    private void Atributos(int nivel, Collection<XAttribute> atributos, Map<String, XAttribute> porDefecto) throws IOException {
+        for (XAttribute atributo : atributos) {
+            if (porDefecto != null && EsGlobal(porDefecto, atributo)) {
+                continue;
+            }
+            String etiqueta;
+            String valor = null;
+            if (atributo instanceof XAttributeList) {
+                etiqueta = "list";
+            } else if (atributo instanceof XAttributeContainer) {
+                etiqueta = "container";
+            } else if (atributo instanceof XAttributeLiteral) {
+                etiqueta = "string";
+                valor = atributo.toString();
+            } else if (atributo instanceof XAttributeDiscrete) {
+                etiqueta = "int";
+                valor = atributo.toString();
+            } else if (atributo instanceof XAttributeContinuous) {
+                etiqueta = "float";
+                valor = atributo.toString();
+            } else if (atributo instanceof XAttributeTimestamp) {
+                etiqueta = "date";
+                valor = Fecha((XAttributeTimestamp) atributo);
+            } else if (atributo instanceof XAttributeBoolean) {
+                etiqueta = "boolean";
+                valor = atributo.toString();
+            } else if (atributo instanceof XAttributeID) {
+                etiqueta = "id";
+                valor = atributo.toString();
+            } else {
+                throw new IOException("Unknown attribute type!");
+            }
+            Collection<XAttribute> hijos = null;
+            if (atributo instanceof XAttributeCollection) {
+                hijos = ((XAttributeCollection) atributo).getCollection();
+            } else if (atributo.hasAttributes()) {
+                hijos = atributo.getAttributes().values();
+            }
+
+            AbrirEtiqueta(nivel, etiqueta);
+            Escribir(Clave(atributo.getKey()));
+            if (valor != null && !valor.trim().isEmpty()) {
+                Escribir(VALOR);
+                Texto(valor.trim());
+                Escribir('"');
+            }
+            if (hijos == null || hijos.isEmpty()) {
+                Escribir(FIN_VACIA);
+            } else {
+                Escribir(FIN_APERTURA);
+                Atributos(nivel + 1, hijos);
+                CerrarEtiqueta(nivel, etiqueta);
+            }
+        }
+    }
+
+    private boolean SoloGlobales(Collection<XAttribute> atributos) {
+        for (XAttribute atributo : atributos) {
+            if (!EsGlobal(this.porDefecto, atributo)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Los atributos de diccionario son la misma instancia que su global; los demas se comparan por tipo y valor
+    private static boolean EsGlobal(Map<String, XAttribute> porDefecto, XAttribute atributo) {
+        XAttribute global = porDefecto.get(atributo.getKey());
+        if (global == atributo) {
+            return true;
+        }
+        return global != null && global.getClass() == atributo.getClass() && !atributo.hasAttributes()
+                && global.toString().equals(atributo.toString());
+    }
+
+    private String Fecha(XAttributeTimestamp atributo) {
+        long valor = atributo.getValueMillis();
+        if (valor != this.ultimaFecha || this.ultimaFechaTexto == null) {
+            this.ultimaFechaTexto = this.conversionFechas.format(atributo.getValue());
+            this.ultimaFecha = valor;
+        }
+        return this.ultimaFechaTexto;
+    }
+
+    private byte[] Clave(String clave) {
+        byte[] bytes = this.claves.get(clave);
+        if (bytes == null) {
+            if (clave == null || clave.trim().isEmpty()) {
+                bytes = new byte[0];
+            } else {
+                StringBuilder texto = new StringBuilder(" key=\"");
+                for (int i = 0; i < clave.trim().length(); i++) {
+                    char c = clave.trim().charAt(i);
+                    texto.append(c < 128 && ESCAPES[c] != null ? new String(ESCAPES[c], StandardCharsets.US_ASCII) : String.valueOf(c));
+                }
+                bytes = texto.append('"').toString().getBytes(StandardCharsets.UTF_8);
+            }
+            this.claves.put(clave, bytes);
+        }
+        return bytes;
+    }
+
+    private void Comentario(String texto) throws IOException {
+        Escribir(INICIO_COMENTARIO);
+        Texto(texto);
+        Escribir(FIN_COMENTARIO);
+    }
+
+    private void AbrirEtiqueta(int nivel, String nombre) throws IOException {
+        Indentar(nivel);
+        Escribir('<');
+        Texto(nombre);
+    }
+
+    private void CerrarEtiqueta(int nivel, String nombre) throws IOException {
+        Indentar(nivel);
+        Escribir('<');
+        Escribir('/');
+        Texto(nombre);
+        Escribir(FIN_APERTURA);
+    }
+
+    //atributo XML de una etiqueta; igual que Spex, no se escribe si el nombre o el valor estan vacios
+    private void Atributo(String nombre, String valor) throws IOException {
+        if (nombre == null || valor == null || nombre.trim().isEmpty() || valor.trim().isEmpty()) {
+            return;
+        }
+        Escribir(' ');
+        Texto(nombre.trim());
+        Escribir('=');
+        Escribir('"');
+        Texto(valor.trim());
+        Escribir('"');
+    }
+
+    private void Indentar(int nivel) throws IOException {
+        if (this.indentar) {
+            for (int i = 0; i < nivel; i++) {
+                Escribir('\t');
+            }
+        }
+    }
+
+    //texto escapado y codificado en UTF-8, caracter a caracter sobre el buffer
+    private void Texto(String texto) throws IOException {
+        int longitud = texto.length();
+        for (int i = 0; i < longitud; i++) {
+            char c = texto.charAt(i);
+            if (c < 128) {
+                byte[] escape = ESCAPES[c];
+                if (escape == null) {
+                    Escribir(c);
+                } else {
+                    Escribir(escape);
+                }
+            } else if (c < 0x800) {
+                Escribir(0xC0 | (c >> 6));
+                Escribir(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < longitud && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, texto.charAt(++i));
+                Escribir(0xF0 | (cp >> 18));
+                Escribir(0x80 | ((cp >> 12) & 0x3F));
+                Escribir(0x80 | ((cp >> 6) & 0x3F));
+                Escribir(0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                //sustituto suelto: no se puede codificar, igual que el codificador de Java se escribe '?'
+                Escribir('?');
+            } else {
+                Escribir(0xE0 | (c >> 12));
+                Escribir(0x80 | ((c >> 6) & 0x3F));
+                Escribir(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void Escribir(int b) throws IOException {
+        if (this.usados == this.buffer.length) {
+            Volcar();
+        }
+        this.buffer[this.usados++] = (byte) b;
+    }
+
+    private void Escribir(byte[] bytes) throws IOException {
+        Escribir(bytes, 0, bytes.length);
+    }
+
+    private void Escribir(byte[] bytes, int desde, int longitud) throws IOException {
+        if (this.usados + longitud > this.buffer.length) {
+            Volcar();
+            if (longitud > this.buffer.length) {
+                ByteBuffer directo = ByteBuffer.wrap(bytes, desde, longitud);
+                while (directo.hasRemaining()) {
+                    this.canal.write(directo);
+                }
+                this.volcados += longitud;
+                return;
+            }
+        }
+        System.arraycopy(bytes, desde, this.buffer, this.usados, longitud);
+        this.usados += longitud;
+    }
+
+    private void Volcar() throws IOException {
+        this.vista.clear();
+        this.vista.limit(this.usados);
+        while (this.vista.hasRemaining()) {
+            this.canal.write(this.vista);
+        }
+        this.volcados += this.usados;
+        this.usados = 0;
+    }
+
+    private static byte[] Ascii(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+}